@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library.benchmark;
+
+import android.content.SharedPreferences;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * In-memory {@link SharedPreferences}, behaves like the platform implementation on the JVM.<br>
+ * Every {@link Editor#commit()} / {@link Editor#apply()} serializes the whole map, like the platform
+ * rewrites the whole XML file, so that the cost of a disk write shows up in the benchmarks.
+ */
+public class InMemorySharedPreferences implements SharedPreferences {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, Object> mMap = new HashMap<String, Object>();
+    private final Map<OnSharedPreferenceChangeListener, Object> mListeners =
+            new WeakHashMap<OnSharedPreferenceChangeListener, Object>();
+    private long mWrites;
+    private long mBytesWritten;
+
+    /**
+     * @return The number of simulated file writes.
+     */
+    public synchronized long getWrites() {
+        return mWrites;
+    }
+
+    /**
+     * @return The number of bytes serialized by all simulated file writes.
+     */
+    public synchronized long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<String, Object>(mMap);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue) {
+        final String value = (String) mMap.get(key);
+        return value != null ? value : defValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized Set<String> getStringSet(String key, Set<String> defValues) {
+        final Set<String> values = (Set<String>) mMap.get(key);
+        return values != null ? values : defValues;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        final Integer value = (Integer) mMap.get(key);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        final Long value = (Long) mMap.get(key);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue) {
+        final Float value = (Float) mMap.get(key);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        final Boolean value = (Boolean) mMap.get(key);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return mMap.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new EditorImpl();
+    }
+
+    @Override
+    public synchronized void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        mListeners.put(listener, this);
+    }
+
+    @Override
+    public synchronized void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private synchronized Set<OnSharedPreferenceChangeListener> commitToMemory(Map<String, Object> changes,
+                                                                           boolean clear) {
+        if (clear) {
+            mMap.clear();
+        }
+        for (final Map.Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() == null || change.getValue() == changes) {
+                mMap.remove(change.getKey());
+            } else {
+                mMap.put(change.getKey(), change.getValue());
+            }
+        }
+        mWrites++;
+        mBytesWritten += writeToDisk();
+        return new HashSet<OnSharedPreferenceChangeListener>(mListeners.keySet());
+    }
+
+    /**
+     * Serializes the whole map, in place of the platform's XML file write.
+     */
+    @SuppressWarnings("unchecked")
+    private int writeToDisk() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        final Writer out = new OutputStreamWriter(bytes, UTF_8);
+        try {
+            for (final Map.Entry<String, Object> entry : mMap.entrySet()) {
+                out.write(entry.getKey());
+                final Object value = entry.getValue();
+                if (value instanceof Set) {
+                    for (final String item : (Set<String>) value) {
+                        out.write(item);
+                    }
+                } else {
+                    out.write(String.valueOf(value));
+                }
+            }
+            out.flush();
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.size();
+    }
+
+    private final class EditorImpl implements Editor {
+        private final Map<String, Object> mChanges = new HashMap<String, Object>();
+        private boolean mClear;
+
+        @Override
+        public synchronized Editor putString(String key, String value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putStringSet(String key, Set<String> values) {
+            mChanges.put(key, values == null ? null : new HashSet<String>(values));
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putInt(String key, int value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putLong(String key, long value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putFloat(String key, float value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putBoolean(String key, boolean value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor remove(String key) {
+            // The change map itself marks a removal, like the platform does.
+            mChanges.put(key, mChanges);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            final Set<OnSharedPreferenceChangeListener> listeners;
+            final Set<String> keys;
+            synchronized (this) {
+                listeners = commitToMemory(mChanges, mClear);
+                keys = new HashSet<String>(mChanges.keySet());
+                mChanges.clear();
+                mClear = false;
+            }
+            for (final OnSharedPreferenceChangeListener listener : listeners) {
+                for (final String key : keys) {
+                    listener.onSharedPreferenceChanged(InMemorySharedPreferences.this, key);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library.benchmark;
+
+import com.venomvendor.library.PrefKey;
+import com.venomvendor.library.SimpleSharedPreferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the typed getters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadBenchmark {
+
+    private static final String INT_KEY = "int_key";
+    private static final String STRING_KEY = "string_key";
+    private static final PrefKey.IntKey TYPED_INT_KEY = new PrefKey.IntKey(INT_KEY, 0);
+
+    private SimpleSharedPreferences mPreferences;
+
+    @Setup
+    public void setUp() {
+        mPreferences = SimpleSharedPreferences.wrap(new InMemorySharedPreferences());
+        mPreferences.putInt(INT_KEY, 42).putString(STRING_KEY, "value");
+    }
+
+    @Benchmark
+    public int getInt() {
+        return mPreferences.getInt(INT_KEY, 0);
+    }
+
+    @Benchmark
+    public int getIntTypedKey() {
+        return mPreferences.get(TYPED_INT_KEY);
+    }
+
+    @Benchmark
+    public int getIntMissing() {
+        return mPreferences.getInt("missing", 0);
+    }
+
+    @Benchmark
+    public int getIntSafeTypeMismatch() {
+        return mPreferences.getIntSafe(STRING_KEY, 0);
+    }
+
+    @Benchmark
+    public String getString() {
+        return mPreferences.getString(STRING_KEY, null);
+    }
+}
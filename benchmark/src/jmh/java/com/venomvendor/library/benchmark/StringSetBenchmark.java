@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library.benchmark;
+
+import com.venomvendor.library.SimpleSharedPreferences;
+import com.venomvendor.library.StringSetCodec;
+import com.venomvendor.library.StringSetCodecs;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding & decoding of String sets of different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StringSetBenchmark {
+
+    private static final String KEY = "set_key";
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    /**
+     * NATIVE is the default from API-11, JSON is the format used till version 2.0.0.
+     */
+    @Param({"NATIVE", "COMPACT", "JSON"})
+    public String codec;
+
+    private SimpleSharedPreferences mPreferences;
+    private SimpleSharedPreferences mUncachedPreferences;
+    private StringSetCodec mCodec;
+    private Set<String> mValues;
+    private Object mEncoded;
+
+    @Setup
+    public void setUp() {
+        if ("NATIVE".equals(codec)) {
+            mCodec = StringSetCodecs.NATIVE;
+        } else {
+            mCodec = "JSON".equals(codec) ? StringSetCodecs.JSON : StringSetCodecs.COMPACT;
+        }
+        mValues = new HashSet<String>(size);
+        for (int i = 0; i < size; i++) {
+            mValues.add("id-" + (1000000 + i));
+        }
+        mEncoded = mCodec.encode(KEY, mValues);
+        mPreferences = SimpleSharedPreferences.wrap(new InMemorySharedPreferences());
+        mPreferences.setStringSetCodec(mCodec).putStringSet(KEY, mValues);
+        mUncachedPreferences = SimpleSharedPreferences.wrap(new InMemorySharedPreferences());
+        mUncachedPreferences.setStringSetCodec(mCodec).setStringSetCacheSize(0).putStringSet(KEY, mValues);
+    }
+
+    @Benchmark
+    public Object encode() {
+        return mCodec.encode(KEY, mValues);
+    }
+
+    @Benchmark
+    public Set<String> decode() {
+        return mCodec.decode(KEY, mEncoded);
+    }
+
+    @Benchmark
+    public SimpleSharedPreferences putStringSet() {
+        return mPreferences.putStringSet(KEY, mValues);
+    }
+
+    @Benchmark
+    public Set<String> getStringSetCached() {
+        return mPreferences.getStringSet(KEY, null);
+    }
+
+    @Benchmark
+    public Set<String> getStringSetUncached() {
+        return mUncachedPreferences.getStringSet(KEY, null);
+    }
+}
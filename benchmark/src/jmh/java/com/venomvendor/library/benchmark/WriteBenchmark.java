@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library.benchmark;
+
+import com.venomvendor.library.SimpleSharedPreferences;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of put*, including the write of the whole file done by every apply().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WriteBenchmark {
+
+    /**
+     * Number of unrelated keys already in the file, each write rewrites all of them.
+     */
+    @Param({"10", "1000"})
+    public int existingKeys;
+
+    private SimpleSharedPreferences mPreferences;
+    private int mCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mPreferences = SimpleSharedPreferences.wrap(new InMemorySharedPreferences());
+        mPreferences.beginBatch();
+        for (int i = 0; i < existingKeys; i++) {
+            mPreferences.putString("existing_" + i, "value_" + i);
+        }
+        mPreferences.endBatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mPreferences.flushNow();
+    }
+
+    @Benchmark
+    public SimpleSharedPreferences putInt() {
+        return mPreferences.putInt("int_key", mCounter++);
+    }
+
+    @Benchmark
+    public SimpleSharedPreferences putString() {
+        return mPreferences.putString("string_key", "value");
+    }
+
+    @Benchmark
+    public SimpleSharedPreferences putTenKeys() {
+        for (int i = 0; i < 10; i++) {
+            mPreferences.putInt("key_" + i, mCounter++);
+        }
+        return mPreferences;
+    }
+
+    @Benchmark
+    public SimpleSharedPreferences putTenKeysInBatch() {
+        mPreferences.beginBatch();
+        for (int i = 0; i < 10; i++) {
+            mPreferences.putInt("key_" + i, mCounter++);
+        }
+        return mPreferences.endBatch();
+    }
+}
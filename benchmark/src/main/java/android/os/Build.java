@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Replaces {@code Build} of the Android stubs, which reports API level 0 on the JVM.<br>
+ * Compiled before the stubs, so that the benchmarks take the paths of current devices,
+ * i.e. {@code Editor.apply()} & {@code StringSetCodecs.NATIVE}.
+ */
+public class Build {
+
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.M;
+    }
+
+    public static class VERSION_CODES {
+        public static final int GINGERBREAD = 9;
+        public static final int HONEYCOMB = 11;
+        public static final int M = 23;
+    }
+}
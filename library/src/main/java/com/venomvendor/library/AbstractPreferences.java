@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Base of {@link SharedPreferences} backends, handles the {@link Editor}, typed reads & listeners.<br>
+ * Subclasses only read & write values, see {@link #read(String)} & {@link #writeToDisk(Map, boolean)}.
+ * <p/>
+ * Values are {@link String}, {@link Integer}, {@link Long}, {@link Float}, {@link Boolean} or {@code Set<String>}.
+ * In a map of changes, a null value means the key is removed.
+ *
+ * @see PreferenceStore
+ */
+public abstract class AbstractPreferences implements SharedPreferences {
+
+    /**
+     * Runs listeners on the main thread, like the platform {@link SharedPreferences}.
+     */
+    public static final Executor MAIN_THREAD = new Executor() {
+        private Handler mHandler;
+
+        @Override
+        public void execute(Runnable command) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                command.run();
+                return;
+            }
+            synchronized (this) {
+                if (mHandler == null) {
+                    mHandler = new Handler(Looper.getMainLooper());
+                }
+            }
+            mHandler.post(command);
+        }
+    };
+
+    /**
+     * Runs listeners on the thread which wrote the changes.
+     */
+    public static final Executor CALLING_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final String TAG = AbstractPreferences.class.getSimpleName();
+    /**
+     * Writes of all backends, one at a time & in order.
+     */
+    private static ExecutorService mDiskExecutor;
+
+    private final Map<OnSharedPreferenceChangeListener, Object> mListeners =
+            new WeakHashMap<OnSharedPreferenceChangeListener, Object>();
+    private final Object mWriteLock = new Object();
+    private final Executor mCallbackExecutor;
+
+    protected AbstractPreferences() {
+        this(MAIN_THREAD);
+    }
+
+    /**
+     * @param callbackExecutor runs the {@link OnSharedPreferenceChangeListener}s.
+     */
+    protected AbstractPreferences(Executor callbackExecutor) {
+        if (callbackExecutor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * @return The value of the key, null if absent. Waits if the values are still being loaded.
+     */
+    protected abstract Object read(String key);
+
+    /**
+     * @return A copy of all the values. Waits if the values are still being loaded.
+     */
+    protected abstract Map<String, ?> readAll();
+
+    /**
+     * Makes the changes visible to {@link #read(String)}. Called one at a time, in the order of the writes.
+     *
+     * @param changes new values, null if removed.
+     * @param clear   true if all values are removed before the changes.
+     */
+    protected abstract void commitToMemory(Map<String, Object> changes, boolean clear);
+
+    /**
+     * Persists changes already passed to {@link #commitToMemory(Map, boolean)}.
+     * Called one at a time & in the same order, on a background thread.
+     *
+     * @param changes new values, null if removed.
+     * @param clear   true if all values are removed before the changes.
+     */
+    protected abstract void writeToDisk(Map<String, Object> changes, boolean clear) throws IOException;
+
+    /**
+     * @return The values of the <b>keys</b>, absent keys are skipped. No write is committed in between the reads.
+     */
+    protected Map<String, Object> read(Collection<String> keys) {
+        final Map<String, Object> values = new HashMap<String, Object>();
+        synchronized (mWriteLock) {
+            for (final String key : keys) {
+                final Object value = read(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return A copy of the values whose keys start with <b>prefix</b>.
+     * Filters {@link #readAll()}, subclasses should skip the other values without copying them.
+     */
+    protected Map<String, Object> readPrefix(String prefix) {
+        final Map<String, Object> values = new HashMap<String, Object>();
+        for (final Map.Entry<String, ?> entry : readAll().entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        return readAll();
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        final String value = (String) read(key);
+        return value != null ? value : defValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        final Set<String> values = (Set<String>) read(key);
+        return values != null ? values : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        final Integer value = (Integer) read(key);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        final Long value = (Long) read(key);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        final Float value = (Float) read(key);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        final Boolean value = (Boolean) read(key);
+        return value != null ? value : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return read(key) != null;
+    }
+
+    @Override
+    public Editor edit() {
+        return new EditorImpl();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (mListeners) {
+            mListeners.put(listener, this);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Commits the changes to memory, then writes them to disk.
+     *
+     * @param sync true to wait for the disk write.
+     * @return false if the disk write failed, always true if not <b>sync</b>.
+     */
+    boolean write(final Map<String, Object> changes, final boolean clear, boolean sync) {
+        final Future<?> diskWrite;
+        synchronized (mWriteLock) {
+            commitToMemory(changes, clear);
+            diskWrite = getDiskExecutor().submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    try {
+                        writeToDisk(changes, clear);
+                    } catch (final IOException e) {
+                        // Logged here, an apply() drops the future.
+                        Log.w(TAG, "Failed to write preferences", e);
+                        throw e;
+                    } catch (final RuntimeException e) {
+                        Log.w(TAG, "Failed to write preferences", e);
+                        throw e;
+                    }
+                    return null;
+                }
+            });
+        }
+        notifyListeners(changes.keySet(), clear);
+        if (!sync) {
+            return true;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    diskWrite.get();
+                    return true;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (final ExecutionException e) {
+            // Already logged by the disk write.
+            return false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Notifies the listeners of changed keys, a cleared store is notified with a null key.
+     */
+    protected void notifyListeners(Set<String> keys, boolean clear) {
+        final List<OnSharedPreferenceChangeListener> listeners;
+        synchronized (mListeners) {
+            if (mListeners.isEmpty()) {
+                return;
+            }
+            listeners = new ArrayList<OnSharedPreferenceChangeListener>(mListeners.keySet());
+        }
+        final List<String> changedKeys = new ArrayList<String>(keys.size() + 1);
+        if (clear) {
+            changedKeys.add(null);
+        }
+        changedKeys.addAll(keys);
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (final String key : changedKeys) {
+                    for (final OnSharedPreferenceChangeListener listener : listeners) {
+                        listener.onSharedPreferenceChanged(AbstractPreferences.this, key);
+                    }
+                }
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getDiskExecutor() {
+        if (mDiskExecutor == null) {
+            mDiskExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, TAG + "-disk");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mDiskExecutor;
+    }
+
+    private final class EditorImpl implements Editor {
+        private final Map<String, Object> mChanges = new HashMap<String, Object>();
+        private boolean mClear;
+
+        @Override
+        public synchronized Editor putString(String key, String value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putStringSet(String key, Set<String> values) {
+            mChanges.put(key, values == null ? null : new HashSet<String>(values));
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putInt(String key, int value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putLong(String key, long value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putFloat(String key, float value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putBoolean(String key, boolean value) {
+            mChanges.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor remove(String key) {
+            mChanges.put(key, null);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return commit(true);
+        }
+
+        @Override
+        public void apply() {
+            commit(false);
+        }
+
+        private boolean commit(boolean sync) {
+            final Map<String, Object> changes;
+            final boolean clear;
+            synchronized (this) {
+                changes = new HashMap<String, Object>(mChanges);
+                clear = mClear;
+                mChanges.clear();
+                mClear = false;
+            }
+            return write(changes, clear, sync);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Values of {@link SimpleSharedPreferences#putBytes(String, byte[])}, one file per key,
+ * stored in <code>files/preferences/blobs/&lt;name&gt;/</code>.
+ * <p/>
+ * A file starts with the generation of it's value, the preferences hold the same generation.
+ * A file whose generation differs, e.g. after a crash in between the two writes, is ignored.<br>
+ * Files are written in background, one at a time & in order. Values waiting to be written are kept in memory,
+ * loaded values are cached till the size of the cache is exceeded.
+ */
+final class BlobStore {
+
+    private static final String TAG = BlobStore.class.getSimpleName();
+    private static final String DIRECTORY = "blobs";
+    private static final String EXTENSION = ".blob";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int HEADER_LENGTH = 8;
+    private static final int MAX_NAME_LENGTH = 200;
+    private static ExecutorService mWriteExecutor;
+
+    private final File mDirectory;
+    /**
+     * Values not yet written, guarded by {@link #mCache}.
+     */
+    private final Map<String, Blob> mPending = new HashMap<String, Blob>();
+    private final LinkedHashMap<String, Blob> mCache = new LinkedHashMap<String, Blob>(16, 0.75f, true);
+    private long mCacheBytes;
+    private long mMaxCacheBytes;
+
+    BlobStore(File directory, long maxCacheBytes) {
+        mDirectory = directory;
+        mMaxCacheBytes = maxCacheBytes;
+    }
+
+    /**
+     * @return The directory of the preferences with the given name.
+     */
+    static File directory(Context context, String name) {
+        return new File(new File(new File(context.getFilesDir(), LogPreferenceStore.DIRECTORY), DIRECTORY), name);
+    }
+
+    /**
+     * Caches the value & writes it in background.
+     *
+     * @param bytes not modified afterwards.
+     */
+    void write(final String key, long generation, byte[] bytes) {
+        final File file = file(key);
+        final Blob blob = new Blob(generation, bytes);
+        synchronized (mCache) {
+            mPending.put(key, blob);
+            uncache(key);
+        }
+        getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeFile(file, blob);
+                } catch (final IOException e) {
+                    Log.e(TAG, "Failed to write " + file, e);
+                } finally {
+                    synchronized (mCache) {
+                        if (mPending.get(key) == blob) {
+                            mPending.remove(key);
+                            cache(key, blob);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The value of the generation, null if the file is absent or has a different generation.
+     * Not a copy, must not be modified.
+     */
+    byte[] read(String key, long generation) {
+        synchronized (mCache) {
+            Blob blob = mPending.get(key);
+            if (blob == null) {
+                blob = mCache.get(key);
+            }
+            if (blob != null && blob.generation == generation) {
+                return blob.bytes;
+            }
+        }
+        final File file = file(key);
+        final Blob blob;
+        try {
+            blob = readFile(file);
+        } catch (final IOException e) {
+            Log.w(TAG, "Failed to read " + file, e);
+            return null;
+        }
+        if (blob == null || blob.generation != generation) {
+            return null;
+        }
+        synchronized (mCache) {
+            if (!mPending.containsKey(key)) {
+                cache(key, blob);
+            }
+        }
+        return blob.bytes;
+    }
+
+    void delete(String key) {
+        final File file = file(key);
+        synchronized (mCache) {
+            mPending.remove(key);
+            uncache(key);
+        }
+        getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                file.delete();
+            }
+        });
+    }
+
+    void clear() {
+        synchronized (mCache) {
+            mPending.clear();
+            mCache.clear();
+            mCacheBytes = 0;
+        }
+        getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final File[] files = mDirectory.listFiles();
+                if (files == null) {
+                    return;
+                }
+                for (final File file : files) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    void setMaxCacheBytes(long maxCacheBytes) {
+        synchronized (mCache) {
+            mMaxCacheBytes = maxCacheBytes;
+            trim();
+        }
+    }
+
+    /**
+     * Must hold {@link #mCache}.
+     */
+    private void cache(String key, Blob blob) {
+        uncache(key);
+        if (blob.bytes.length > mMaxCacheBytes) {
+            return;
+        }
+        mCache.put(key, blob);
+        mCacheBytes += blob.bytes.length;
+        trim();
+    }
+
+    private void uncache(String key) {
+        final Blob removed = mCache.remove(key);
+        if (removed != null) {
+            mCacheBytes -= removed.bytes.length;
+        }
+    }
+
+    /**
+     * Evicts the least recently used values till the cache fits.
+     */
+    private void trim() {
+        final Iterator<Blob> iterator = mCache.values().iterator();
+        while (mCacheBytes > mMaxCacheBytes && iterator.hasNext()) {
+            mCacheBytes -= iterator.next().bytes.length;
+            iterator.remove();
+        }
+    }
+
+    private File file(String key) {
+        final String name;
+        try {
+            name = URLEncoder.encode(key, "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        if (name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Key is too long for a blob: " + key);
+        }
+        return new File(mDirectory, name + EXTENSION);
+    }
+
+    /**
+     * Writes a temporary file, then renames it, so that the file is never partially written.
+     */
+    private void writeFile(File file, Blob blob) throws IOException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        final File temp = new File(file.getPath() + TEMP_EXTENSION);
+        final FileOutputStream out = new FileOutputStream(temp);
+        try {
+            final FileChannel channel = out.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putLong(blob.generation).flip();
+            final ByteBuffer[] buffers = {header, ByteBuffer.wrap(blob.bytes)};
+            long remaining = HEADER_LENGTH + blob.bytes.length;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp);
+        }
+    }
+
+    /**
+     * @return The blob of the file, null if absent or truncated.
+     */
+    private static Blob readFile(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    return null;
+                }
+            }
+            buffer.flip();
+            final long generation = buffer.getLong();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new Blob(generation, bytes);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static synchronized ExecutorService getWriteExecutor() {
+        if (mWriteExecutor == null) {
+            mWriteExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, TAG + "-write");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mWriteExecutor;
+    }
+
+    private static final class Blob {
+        final long generation;
+        final byte[] bytes;
+
+        Blob(long generation, byte[] bytes) {
+            this.generation = generation;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link PreferenceMetrics} keeping counts & latency histograms in memory.<br>
+ * Latencies are recorded in power of two buckets, recording does not allocate or lock.
+ * <p/>
+ * <pre>
+ * HistogramMetrics metrics = new HistogramMetrics();
+ * mPreferences.setMetrics(metrics);
+ * ...
+ * Log.d(TAG, metrics.toString());
+ * </pre>
+ */
+public class HistogramMetrics implements PreferenceMetrics {
+
+    private static final int BUCKETS = 64;
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    /**
+     * Bucket <code>i</code> of operation <code>o</code> is at <code>o * BUCKETS + i</code>,
+     * holding durations from <code>2^(i-1)</code> to <code>2^i - 1</code> nanoseconds.
+     */
+    private final AtomicLongArray mBuckets = new AtomicLongArray(OPERATIONS.length * BUCKETS);
+    private final AtomicLongArray mTotalNanos = new AtomicLongArray(OPERATIONS.length);
+    private final AtomicLong mApplies = new AtomicLong();
+    private final AtomicLong mCommits = new AtomicLong();
+    private final AtomicLong mStringSets = new AtomicLong();
+    private final AtomicLong mStringSetLength = new AtomicLong();
+    private final AtomicLong mTypeMismatches = new AtomicLong();
+    private final AtomicLong mCompressedLength = new AtomicLong();
+    private final AtomicLong mUncompressedLength = new AtomicLong();
+
+    @Override
+    public void onOperation(Operation operation, long durationNanos) {
+        final int bucket = durationNanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(durationNanos);
+        mBuckets.incrementAndGet(operation.ordinal() * BUCKETS + Math.min(bucket, BUCKETS - 1));
+        mTotalNanos.addAndGet(operation.ordinal(), durationNanos);
+    }
+
+    @Override
+    public void onDiskWrite(boolean commit) {
+        (commit ? mCommits : mApplies).incrementAndGet();
+    }
+
+    @Override
+    public void onStringSetEncoded(int size, int encodedLength) {
+        mStringSets.incrementAndGet();
+        mStringSetLength.addAndGet(encodedLength);
+    }
+
+    @Override
+    public void onCompressed(int length, int compressedLength) {
+        mUncompressedLength.addAndGet(length);
+        mCompressedLength.addAndGet(Math.min(length, compressedLength));
+    }
+
+    @Override
+    public void onTypeMismatch(String key, String expectedType) {
+        mTypeMismatches.incrementAndGet();
+    }
+
+    /**
+     * @return Number of times the operation was done.
+     */
+    public long getCount(Operation operation) {
+        long count = 0;
+        final int offset = operation.ordinal() * BUCKETS;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mBuckets.get(offset + i);
+        }
+        return count;
+    }
+
+    /**
+     * @return Average duration in nanoseconds, 0 if never done.
+     */
+    public long getMeanNanos(Operation operation) {
+        final long count = getCount(operation);
+        return count == 0 ? 0 : mTotalNanos.get(operation.ordinal()) / count;
+    }
+
+    /**
+     * @param percentile between 0 & 100, e.g. 99.
+     * @return Upper bound of the duration in nanoseconds, precise to a power of two. 0 if never done.
+     */
+    public long getPercentileNanos(Operation operation, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile should be between 0 & 100");
+        }
+        final long count = getCount(operation);
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        final int offset = operation.ordinal() * BUCKETS;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets.get(offset + i);
+            if (seen >= rank) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public long getApplyCount() {
+        return mApplies.get();
+    }
+
+    public long getCommitCount() {
+        return mCommits.get();
+    }
+
+    public long getStringSetCount() {
+        return mStringSets.get();
+    }
+
+    /**
+     * @return Total chars of the encoded String sets.
+     */
+    public long getStringSetEncodedLength() {
+        return mStringSetLength.get();
+    }
+
+    public long getTypeMismatchCount() {
+        return mTypeMismatches.get();
+    }
+
+    /**
+     * @return Stored chars per char of the compressed values, e.g. 0.25. 1 if nothing was compressed.
+     * Time taken is recorded as {@link Operation#COMPRESS} & {@link Operation#DECOMPRESS}.
+     */
+    public double getCompressionRatio() {
+        final long length = mUncompressedLength.get();
+        return length == 0 ? 1 : (double) mCompressedLength.get() / length;
+    }
+
+    /**
+     * Clears all the counts.
+     */
+    public void reset() {
+        for (int i = 0; i < mBuckets.length(); i++) {
+            mBuckets.set(i, 0);
+        }
+        for (int i = 0; i < mTotalNanos.length(); i++) {
+            mTotalNanos.set(i, 0);
+        }
+        mApplies.set(0);
+        mCommits.set(0);
+        mStringSets.set(0);
+        mStringSetLength.set(0);
+        mTypeMismatches.set(0);
+        mCompressedLength.set(0);
+        mUncompressedLength.set(0);
+    }
+
+    /**
+     * @return Count, mean & p99 in microseconds of each operation done, followed by the other counts.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("HistogramMetrics{");
+        for (final Operation operation : OPERATIONS) {
+            final long count = getCount(operation);
+            if (count == 0) {
+                continue;
+            }
+            builder.append(operation).append("=[count=").append(count)
+                    .append(", meanUs=").append(TimeUnit.NANOSECONDS.toMicros(getMeanNanos(operation)))
+                    .append(", p99Us<=").append(TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(operation, 99)))
+                    .append("], ");
+        }
+        return builder.append("applies=").append(getApplyCount())
+                .append(", commits=").append(getCommitCount())
+                .append(", stringSets=").append(getStringSetCount())
+                .append(", stringSetLength=").append(getStringSetEncodedLength())
+                .append(", typeMismatches=").append(getTypeMismatchCount())
+                .append(", compressionRatio=").append(getCompressionRatio())
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Listeners of keys & key prefixes, held weakly.<br>
+ * Finding the listeners of a changed key costs one lookup per distinct prefix length, not one per listener.
+ */
+final class ListenerRegistry {
+
+    private final Map<String, List<Subscription>> mByKey = new HashMap<String, List<Subscription>>();
+    private final Map<String, List<Subscription>> mByPrefix = new HashMap<String, List<Subscription>>();
+    /**
+     * Distinct lengths of the registered prefixes, ascending.
+     */
+    private int[] mPrefixLengths = new int[0];
+    private volatile int mSize;
+
+    /**
+     * @param withValue false if the listener only needs to know about the change, it then receives a null value.
+     */
+    synchronized void add(String key, boolean prefix, PrefKey<?> typedKey, OnKeyChangeListener<?> listener,
+                          boolean withValue) {
+        // Drops garbage collected listeners.
+        remove(null);
+        final Map<String, List<Subscription>> map = prefix ? mByPrefix : mByKey;
+        List<Subscription> subscriptions = map.get(key);
+        if (subscriptions == null) {
+            subscriptions = new ArrayList<Subscription>(2);
+            map.put(key, subscriptions);
+            if (prefix) {
+                updatePrefixLengths();
+            }
+        }
+        subscriptions.add(new Subscription(listener, typedKey, withValue));
+        mSize++;
+    }
+
+    /**
+     * Removes every subscription of the listener, & of listeners already garbage collected.
+     */
+    synchronized void remove(OnKeyChangeListener<?> listener) {
+        prune(mByKey, listener);
+        if (prune(mByPrefix, listener)) {
+            updatePrefixLengths();
+        }
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return Subscriptions of the key & it's prefixes.
+     */
+    synchronized List<Subscription> match(String key) {
+        List<Subscription> matches = Collections.emptyList();
+        final List<Subscription> subscriptions = mByKey.get(key);
+        if (subscriptions != null) {
+            matches = new ArrayList<Subscription>(subscriptions);
+        }
+        for (final int length : mPrefixLengths) {
+            if (length > key.length()) {
+                break;
+            }
+            final List<Subscription> prefixed = mByPrefix.get(key.substring(0, length));
+            if (prefixed != null) {
+                if (matches.isEmpty()) {
+                    matches = new ArrayList<Subscription>(prefixed.size());
+                }
+                matches.addAll(prefixed);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return Keys with a listener, not including prefixes.
+     */
+    synchronized Set<String> keys() {
+        return new HashSet<String>(mByKey.keySet());
+    }
+
+    /**
+     * @return All prefix subscriptions.
+     */
+    synchronized List<Subscription> prefixed() {
+        final List<Subscription> all = new ArrayList<Subscription>();
+        for (final List<Subscription> subscriptions : mByPrefix.values()) {
+            all.addAll(subscriptions);
+        }
+        return all;
+    }
+
+    /**
+     * @return true if a prefix was removed.
+     */
+    private boolean prune(Map<String, List<Subscription>> map, OnKeyChangeListener<?> listener) {
+        boolean removedKey = false;
+        final Iterator<List<Subscription>> lists = map.values().iterator();
+        while (lists.hasNext()) {
+            final List<Subscription> subscriptions = lists.next();
+            final Iterator<Subscription> iterator = subscriptions.iterator();
+            while (iterator.hasNext()) {
+                final OnKeyChangeListener<?> current = iterator.next().get();
+                if (current == null || current == listener) {
+                    iterator.remove();
+                    mSize--;
+                }
+            }
+            if (subscriptions.isEmpty()) {
+                lists.remove();
+                removedKey = true;
+            }
+        }
+        return removedKey;
+    }
+
+    private void updatePrefixLengths() {
+        final int[] lengths = new int[mByPrefix.size()];
+        int count = 0;
+        for (final String prefix : mByPrefix.keySet()) {
+            lengths[count++] = prefix.length();
+        }
+        Arrays.sort(lengths);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || lengths[distinct - 1] != lengths[i]) {
+                lengths[distinct++] = lengths[i];
+            }
+        }
+        final int[] prefixLengths = new int[distinct];
+        System.arraycopy(lengths, 0, prefixLengths, 0, distinct);
+        mPrefixLengths = prefixLengths;
+    }
+
+    /**
+     * A listener & the typed key it was registered with, null for a plain key or prefix.
+     */
+    static final class Subscription extends WeakReference<OnKeyChangeListener<?>> {
+        final PrefKey<?> typedKey;
+        final boolean withValue;
+
+        Subscription(OnKeyChangeListener<?> listener, PrefKey<?> typedKey, boolean withValue) {
+            super(listener);
+            this.typedKey = typedKey;
+            this.withValue = withValue;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opens {@link LogPreferences}, stored in <code>files/preferences/&lt;name&gt;.log</code>.
+ *
+ * @see PreferenceStores#appendLog()
+ */
+class LogPreferenceStore implements PreferenceStore {
+
+    static final String DIRECTORY = "preferences";
+    private static final String EXTENSION = ".log";
+    /**
+     * Opened files, shared by all stores so that one file is never written by two instances.
+     */
+    private static final Map<String, LogPreferences> mOpened = new HashMap<String, LogPreferences>();
+
+    private final int mMinGarbage;
+
+    LogPreferenceStore(int minGarbage) {
+        mMinGarbage = minGarbage;
+    }
+
+    @Override
+    public SharedPreferences open(Context context, String name) {
+        if (name == null) {
+            name = PreferenceStores.defaultName(context);
+        }
+        final File file = new File(new File(context.getFilesDir(), DIRECTORY), name + EXTENSION);
+        synchronized (mOpened) {
+            LogPreferences preferences = mOpened.get(file.getPath());
+            if (preferences == null) {
+                preferences = new LogPreferences(file, mMinGarbage, AbstractPreferences.MAIN_THREAD);
+                mOpened.put(file.getPath(), preferences);
+            }
+            return preferences;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof LogPreferenceStore && ((LogPreferenceStore) o).mMinGarbage == mMinGarbage;
+    }
+
+    @Override
+    public int hashCode() {
+        return mMinGarbage;
+    }
+}
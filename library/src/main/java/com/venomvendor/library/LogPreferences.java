@@ -0,0 +1,548 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Preferences stored as an append-only log of changes.<br>
+ * A write appends only the changed entries, instead of rewriting the whole file.
+ * Once the log has more stale records than live entries, it is compacted into a snapshot of the live entries.
+ * <p/>
+ * File: <code>magic, version, record*</code><br>
+ * Record: <code>length, op, key, value, crc32</code>. A torn record at the end is dropped on load.
+ */
+class LogPreferences extends AbstractPreferences {
+
+    private static final String TAG = LogPreferences.class.getSimpleName();
+
+    static final int DEFAULT_MIN_GARBAGE = 256;
+
+    static final int MAGIC = 0x5353504C; // SSPL
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+
+    static final byte OP_STRING = 1;
+    static final byte OP_INT = 2;
+    static final byte OP_LONG = 3;
+    static final byte OP_FLOAT = 4;
+    static final byte OP_BOOLEAN = 5;
+    static final byte OP_STRING_SET = 6;
+    static final byte OP_REMOVE = 7;
+    static final byte OP_CLEAR = 8;
+
+    private final File mFile;
+    private final int mMinGarbage;
+    private final Map<String, Object> mMap = new HashMap<String, Object>();
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
+    private volatile Throwable mLoadError;
+    /**
+     * Records in the file, accessed only by the disk thread after load.
+     */
+    private int mRecords;
+    /**
+     * Bytes of valid records, after the header.
+     */
+    private long mValidLength;
+    /**
+     * Set if a failed append could not be truncated, the next write rewrites the log.
+     */
+    private boolean mCompactPending;
+    private FileOutputStream mOut;
+
+    LogPreferences(File file, int minGarbage, Executor callbackExecutor) {
+        super(callbackExecutor);
+        mFile = file;
+        mMinGarbage = minGarbage;
+        final Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load();
+                } catch (final Throwable throwable) {
+                    mLoadError = throwable;
+                } finally {
+                    mLoaded.countDown();
+                }
+            }
+        }, "LogPreferences-load");
+        loader.start();
+    }
+
+    @Override
+    protected Object read(String key) {
+        awaitLoaded();
+        synchronized (mMap) {
+            return mMap.get(key);
+        }
+    }
+
+    @Override
+    protected Map<String, ?> readAll() {
+        awaitLoaded();
+        synchronized (mMap) {
+            return new HashMap<String, Object>(mMap);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> readPrefix(String prefix) {
+        awaitLoaded();
+        final Map<String, Object> values = new HashMap<String, Object>();
+        synchronized (mMap) {
+            for (final Map.Entry<String, Object> entry : mMap.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    values.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    protected void commitToMemory(Map<String, Object> changes, boolean clear) {
+        awaitLoaded();
+        synchronized (mMap) {
+            apply(mMap, changes, clear);
+        }
+    }
+
+    @Override
+    protected void writeToDisk(Map<String, Object> changes, boolean clear) throws IOException {
+        if (mCompactPending) {
+            // The changes are already in memory.
+            compact();
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        if (clear) {
+            writeRecord(out, OP_CLEAR, null, null);
+        }
+        for (final Map.Entry<String, Object> change : changes.entrySet()) {
+            writeRecord(out, opOf(change.getValue()), change.getKey(), change.getValue());
+        }
+        append(bytes);
+        mRecords += changes.size() + (clear ? 1 : 0);
+        final int live;
+        synchronized (mMap) {
+            live = mMap.size();
+        }
+        final int garbage = mRecords - live;
+        if (garbage >= mMinGarbage && garbage > live) {
+            compact();
+        }
+    }
+
+    /**
+     * @return Number of records in the log, including stale ones.
+     */
+    int getRecordCount() {
+        return mRecords;
+    }
+
+    private void awaitLoaded() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mLoaded.await();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (mLoadError != null) {
+            throw new IllegalStateException("Failed to load " + mFile, mLoadError);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!mFile.exists()) {
+            return;
+        }
+        if (!hasHeader(mFile)) {
+            // Left by a crash while the log was created, nothing was written to it yet.
+            if (!mFile.delete()) {
+                throw new IOException("Failed to delete " + mFile);
+            }
+            return;
+        }
+        final long validLength;
+        final InputStream stream = new BufferedInputStream(new FileInputStream(mFile), 16 * 1024);
+        try {
+            final DataInputStream in = new DataInputStream(stream);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a preferences log: " + mFile);
+            }
+            final Map<String, Object> map = new HashMap<String, Object>();
+            mRecords = readRecords(in, map, mFile.length() - HEADER_LENGTH);
+            validLength = HEADER_LENGTH + mValidLength;
+            synchronized (mMap) {
+                mMap.putAll(map);
+            }
+        } finally {
+            stream.close();
+        }
+        if (validLength < mFile.length()) {
+            // Drop the torn record of an interrupted write.
+            final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+            try {
+                file.setLength(validLength);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Replays records into <b>map</b>, till the end or the first invalid record.
+     *
+     * @param available bytes after the header, a longer record is torn.
+     * @return The number of records read.
+     */
+    private int readRecords(DataInputStream in, Map<String, Object> map, long available) throws IOException {
+        int records = 0;
+        mValidLength = 0;
+        final CRC32 crc = new CRC32();
+        while (true) {
+            final int length;
+            try {
+                length = in.readInt();
+            } catch (final EOFException eof) {
+                return records;
+            }
+            if (length <= 0 || length > available - mValidLength - 8) {
+                return records;
+            }
+            final byte[] payload = new byte[length];
+            try {
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if (in.readInt() != (int) crc.getValue()) {
+                    return records;
+                }
+            } catch (final EOFException eof) {
+                return records;
+            }
+            readPayload(payload, map);
+            mValidLength += 4 + length + 4;
+            records++;
+        }
+    }
+
+    /**
+     * @return false if the file is shorter than the header, or the header was never written, i.e. all zeros.
+     */
+    private static boolean hasHeader(File file) throws IOException {
+        if (file.length() < HEADER_LENGTH) {
+            return false;
+        }
+        final byte[] header = new byte[HEADER_LENGTH];
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            in.readFully(header);
+        } finally {
+            in.close();
+        }
+        for (final byte b : header) {
+            if (b != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(ByteArrayOutputStream bytes) throws IOException {
+        if (mOut == null) {
+            if (!mFile.exists() || mFile.length() < HEADER_LENGTH) {
+                createFile();
+            }
+            mOut = new FileOutputStream(mFile, true);
+        }
+        try {
+            bytes.writeTo(mOut);
+            mOut.flush();
+            mOut.getFD().sync();
+        } catch (final IOException e) {
+            dropTornRecord();
+            throw e;
+        }
+        mValidLength += bytes.size();
+    }
+
+    /**
+     * Truncates the log to the last valid record after a failed append, so that later records are never
+     * written after a torn one, which would hide them on the next load. If that fails, the next write compacts.
+     */
+    private void dropTornRecord() {
+        try {
+            mOut.close();
+        } catch (final IOException ignored) {
+        }
+        mOut = null;
+        try {
+            final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+            try {
+                file.setLength(HEADER_LENGTH + mValidLength);
+                file.getFD().sync();
+            } finally {
+                file.close();
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, "Failed to truncate " + mFile, e);
+            mCompactPending = true;
+        }
+    }
+
+    /**
+     * Creates the log with only the header, written to a temporary file first so that a crash never
+     * leaves a partial header, replaces a shorter file left by an earlier crash.
+     */
+    private void createFile() throws IOException {
+        final File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        final FileOutputStream stream = new FileOutputStream(tmp);
+        try {
+            final DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!tmp.renameTo(mFile)) {
+            throw new IOException("Failed to create " + mFile);
+        }
+        mValidLength = 0;
+    }
+
+    /**
+     * Rewrites the log with only the live entries.
+     */
+    private void compact() throws IOException {
+        final Map<String, Object> snapshot;
+        synchronized (mMap) {
+            snapshot = new HashMap<String, Object>(mMap);
+        }
+        final File tmp = new File(mFile.getPath() + ".tmp");
+        final FileOutputStream stream = new FileOutputStream(tmp);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 16 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (final Map.Entry<String, Object> entry : snapshot.entrySet()) {
+                writeRecord(out, opOf(entry.getValue()), entry.getKey(), entry.getValue());
+            }
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        final long tmpLength = tmp.length();
+        if (mOut != null) {
+            mOut.close();
+            mOut = null;
+        }
+        if (!tmp.renameTo(mFile)) {
+            throw new IOException("Failed to replace " + mFile);
+        }
+        mRecords = snapshot.size();
+        mValidLength = tmpLength - HEADER_LENGTH;
+        mCompactPending = false;
+    }
+
+    @SuppressWarnings("unchecked")
+    static void apply(Map<String, Object> map, Map<String, Object> changes, boolean clear) {
+        if (clear) {
+            map.clear();
+        }
+        for (final Map.Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                map.remove(change.getKey());
+            } else if (change.getValue() instanceof Set) {
+                map.put(change.getKey(), new HashSet<String>((Set<String>) change.getValue()));
+            } else {
+                map.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    static byte opOf(Object value) {
+        if (value == null) {
+            return OP_REMOVE;
+        } else if (value instanceof String) {
+            return OP_STRING;
+        } else if (value instanceof Integer) {
+            return OP_INT;
+        } else if (value instanceof Long) {
+            return OP_LONG;
+        } else if (value instanceof Float) {
+            return OP_FLOAT;
+        } else if (value instanceof Boolean) {
+            return OP_BOOLEAN;
+        } else if (value instanceof Set) {
+            return OP_STRING_SET;
+        }
+        throw new IllegalArgumentException("Unsupported type: " + value.getClass());
+    }
+
+    /**
+     * Writes <code>length, payload, crc32</code>.
+     */
+    static void writeRecord(DataOutputStream out, byte op, String key, Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        final DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeByte(op);
+        if (op != OP_CLEAR) {
+            writeString(payload, key);
+            writeValue(payload, op, value);
+        }
+        final byte[] data = bytes.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        out.writeInt(data.length);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    static void writeValue(DataOutputStream out, byte op, Object value) throws IOException {
+        switch (op) {
+            case OP_STRING:
+                writeString(out, (String) value);
+                break;
+            case OP_INT:
+                out.writeInt((Integer) value);
+                break;
+            case OP_LONG:
+                out.writeLong((Long) value);
+                break;
+            case OP_FLOAT:
+                out.writeFloat((Float) value);
+                break;
+            case OP_BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case OP_STRING_SET:
+                final Set<String> values = (Set<String>) value;
+                out.writeInt(values.size());
+                for (final String item : values) {
+                    writeString(out, item);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    static Object readValue(DataInputStream in, byte op) throws IOException {
+        switch (op) {
+            case OP_STRING:
+                return readString(in);
+            case OP_INT:
+                return in.readInt();
+            case OP_LONG:
+                return in.readLong();
+            case OP_FLOAT:
+                return in.readFloat();
+            case OP_BOOLEAN:
+                return in.readBoolean();
+            case OP_STRING_SET:
+                final int size = in.readInt();
+                final Set<String> values = new HashSet<String>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    values.add(readString(in));
+                }
+                return values;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Applies a record to <b>map</b>.
+     *
+     * @return The changed key, null if the map was cleared.
+     */
+    static String readPayload(byte[] payload, Map<String, Object> map) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte op = in.readByte();
+        if (op == OP_CLEAR) {
+            map.clear();
+            return null;
+        }
+        final String key = readString(in);
+        if (op == OP_REMOVE) {
+            map.remove(key);
+        } else {
+            map.put(key, readValue(in, op));
+        }
+        return key;
+    }
+
+    /**
+     * Writes <code>length, UTF-8 bytes</code>, length -1 for null. No 64K limit unlike {@link DataOutputStream#writeUTF}.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
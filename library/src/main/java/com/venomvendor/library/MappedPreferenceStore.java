@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opens {@link MappedPreferences}, stored in <code>files/preferences/&lt;name&gt;.map</code>.
+ *
+ * @see PreferenceStores#mapped()
+ */
+class MappedPreferenceStore implements PreferenceStore {
+
+    private static final String EXTENSION = ".map";
+    /**
+     * Opened files, shared by all stores so that one file is never mapped by two instances.
+     */
+    private static final Map<String, MappedPreferences> mOpened = new HashMap<String, MappedPreferences>();
+
+    @Override
+    public SharedPreferences open(Context context, String name) {
+        if (name == null) {
+            name = PreferenceStores.defaultName(context);
+        }
+        final File file = new File(new File(context.getFilesDir(), LogPreferenceStore.DIRECTORY), name + EXTENSION);
+        synchronized (mOpened) {
+            MappedPreferences preferences = mOpened.get(file.getPath());
+            if (preferences == null) {
+                try {
+                    preferences = new MappedPreferences(file, AbstractPreferences.MAIN_THREAD);
+                } catch (final IOException e) {
+                    throw new IllegalStateException("Failed to open " + file, e);
+                }
+                mOpened.put(file.getPath(), preferences);
+            }
+            return preferences;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MappedPreferenceStore;
+    }
+
+    @Override
+    public int hashCode() {
+        return MappedPreferenceStore.class.hashCode();
+    }
+}
@@ -0,0 +1,772 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Preferences in a memory-mapped file, nothing is parsed on open.<br>
+ * A read decodes only the requested entry, a write updates the entry in place when the size is unchanged,
+ * else appends it to the data region.
+ * <p/>
+ * File: <code>header, slot*, entry*</code><br>
+ * Header: <code>magic, version, slot count, data capacity, data end, used slots, garbage bytes</code><br>
+ * Slot: <code>key hash, entry offset</code>, offset 0 if empty, -1 if removed. Open addressing, linear probing.<br>
+ * Entry: <code>length, type, key, value, checksum</code>. Strings are stored as UTF-16 chars.
+ * <p/>
+ * An entry with a wrong checksum, e.g. torn by a crash, is treated as absent.
+ * The file is rebuilt into a larger one when the slots are half used or the data region is full.
+ */
+class MappedPreferences extends AbstractPreferences {
+
+    private static final String TAG = MappedPreferences.class.getSimpleName();
+
+    private static final int MAGIC = 0x5353504D; // SSPM
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 32;
+    private static final int SLOT_LENGTH = 8;
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+
+    private static final int OFFSET_SLOT_COUNT = 8;
+    private static final int OFFSET_DATA_CAPACITY = 12;
+    private static final int OFFSET_DATA_END = 16;
+    private static final int OFFSET_USED_SLOTS = 20;
+    private static final int OFFSET_GARBAGE = 24;
+
+    static final int DEFAULT_SLOT_COUNT = 1024;
+    /**
+     * Number of decoded Strings & String sets kept.
+     */
+    private static final int DECODED_CACHE_SIZE = 64;
+    static final int DEFAULT_DATA_CAPACITY = 64 * 1024;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_STRING_SET = 6;
+    private static final String[] TYPE_NAMES = {null, "String", "int", "long", "float", "boolean", "Set<String>"};
+
+    private final File mFile;
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private MappedByteBuffer mBuffer;
+    private int mSlotCount;
+    private int mDataStart;
+    /**
+     * Rebuilt file which replaces {@link #mFile} once forced by {@link #writeToDisk(Map, boolean)}, null if none.
+     */
+    private File mUnpublished;
+    private int mRebuilds;
+    /**
+     * Decoded Strings & String sets by key, invalidated by every write of the key. Guarded by itself.<br>
+     * Each read of an unchanged value returns the same instance, which the caches of
+     * {@link SimpleSharedPreferences} compare by identity.
+     */
+    private final Map<String, Object> mDecoded = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > DECODED_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @throws IOException if the file cannot be created or is not a mapped preferences file.
+     */
+    MappedPreferences(File file, Executor callbackExecutor) throws IOException {
+        super(callbackExecutor);
+        mFile = file;
+        if (!file.exists() || file.length() < HEADER_LENGTH) {
+            final File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Failed to create " + parent);
+            }
+            rebuild(DEFAULT_SLOT_COUNT, DEFAULT_DATA_CAPACITY, new HashMap<String, Object>());
+            publish(mBuffer, mUnpublished);
+        } else if (!map(file)) {
+            Log.w(TAG, "Corrupt header, cleared " + file);
+            rebuild(DEFAULT_SLOT_COUNT, DEFAULT_DATA_CAPACITY, new HashMap<String, Object>());
+            publish(mBuffer, mUnpublished);
+        }
+    }
+
+    @Override
+    protected Object read(String key) {
+        mLock.readLock().lock();
+        try {
+            final int offset = find(key);
+            return offset > 0 ? readDecoded(key, offset) : null;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected Map<String, ?> readAll() {
+        mLock.readLock().lock();
+        try {
+            return readEntries();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Decodes only the entries whose key starts with <b>prefix</b>.
+     */
+    @Override
+    protected Map<String, Object> readPrefix(String prefix) {
+        final Map<String, Object> entries = new HashMap<String, Object>();
+        mLock.readLock().lock();
+        try {
+            for (int slot = 0; slot < mSlotCount; slot++) {
+                final int offset = mBuffer.getInt(slotPosition(slot) + 4);
+                if (offset > 0 && keyStartsWith(offset, prefix) && isValid(offset)) {
+                    entries.put(readChars(offset + 5), readValue(offset));
+                }
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+        return entries;
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        mLock.readLock().lock();
+        try {
+            final int offset = find(key, TYPE_STRING);
+            return offset > 0 ? (String) readDecoded(key, offset) : defValue;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        mLock.readLock().lock();
+        try {
+            final int offset = find(key, TYPE_STRING_SET);
+            return offset > 0 ? (Set<String>) readDecoded(key, offset) : defValues;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        mLock.readLock().lock();
+        try {
+            final int offset = find(key, TYPE_INT);
+            return offset > 0 ? mBuffer.getInt(valueOffset(offset)) : defValue;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        mLock.readLock().lock();
+        try {
+            final int offset = find(key, TYPE_LONG);
+            return offset > 0 ? mBuffer.getLong(valueOffset(offset)) : defValue;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        mLock.readLock().lock();
+        try {
+            final int offset = find(key, TYPE_FLOAT);
+            return offset > 0 ? mBuffer.getFloat(valueOffset(offset)) : defValue;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        mLock.readLock().lock();
+        try {
+            final int offset = find(key, TYPE_BOOLEAN);
+            return offset > 0 ? mBuffer.get(valueOffset(offset)) != 0 : defValue;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        mLock.readLock().lock();
+        try {
+            return find(key) > 0;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected void commitToMemory(Map<String, Object> changes, boolean clear) {
+        mLock.writeLock().lock();
+        try {
+            if (clear) {
+                rebuild(DEFAULT_SLOT_COUNT, DEFAULT_DATA_CAPACITY, new HashMap<String, Object>());
+            }
+            for (final Map.Entry<String, Object> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    delete(change.getKey());
+                } else {
+                    put(change.getKey(), change.getValue());
+                }
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to write " + mFile, e);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void writeToDisk(Map<String, Object> changes, boolean clear) throws IOException {
+        final MappedByteBuffer buffer;
+        final File unpublished;
+        mLock.readLock().lock();
+        try {
+            buffer = mBuffer;
+            unpublished = mUnpublished;
+        } finally {
+            mLock.readLock().unlock();
+        }
+        publish(buffer, unpublished);
+    }
+
+    /**
+     * Forces the mapping, then replaces the file with the rebuilt one, unless a later rebuild replaced it.
+     */
+    private void publish(MappedByteBuffer buffer, File unpublished) throws IOException {
+        buffer.force();
+        if (unpublished == null) {
+            return;
+        }
+        mLock.writeLock().lock();
+        try {
+            if (mUnpublished == unpublished) {
+                if (!unpublished.renameTo(mFile)) {
+                    throw new IOException("Failed to replace " + mFile);
+                }
+                mUnpublished = null;
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Maps the whole file, replacing the current mapping.
+     *
+     * @return false if the header is corrupt, the current mapping is kept.
+     * @throws IOException if not a mapped preferences file.
+     */
+    private boolean map(File source) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(source, "rw");
+        try {
+            final FileChannel channel = file.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a mapped preferences file: " + source);
+            }
+            final int slotCount = buffer.getInt(OFFSET_SLOT_COUNT);
+            final int capacity = buffer.getInt(OFFSET_DATA_CAPACITY);
+            final long dataStart = HEADER_LENGTH + (long) slotCount * SLOT_LENGTH;
+            final int dataEnd = buffer.getInt(OFFSET_DATA_END);
+            // Probing needs a power of two slots, entries must be within the file.
+            if (slotCount <= 0 || (slotCount & (slotCount - 1)) != 0 || capacity < 0
+                    || dataStart + capacity > channel.size() || dataEnd < dataStart || dataEnd > dataStart + capacity) {
+                return false;
+            }
+            mSlotCount = slotCount;
+            mDataStart = (int) dataStart;
+            mBuffer = buffer;
+            return true;
+        } finally {
+            // The mapping stays valid after the channel is closed.
+            file.close();
+        }
+    }
+
+    /**
+     * @return Offset of the entry of <b>key</b>, 0 if absent or corrupt.
+     */
+    private int find(String key) {
+        final int slot = findSlot(key);
+        if (slot < 0) {
+            return 0;
+        }
+        final int offset = mBuffer.getInt(slotPosition(slot) + 4);
+        if (!isValid(offset)) {
+            Log.w(TAG, "Corrupt entry " + key + " in " + mFile);
+            return 0;
+        }
+        return offset;
+    }
+
+    /**
+     * @return Offset of the entry of <b>key</b>, 0 if absent.
+     * @throws ClassCastException if the entry is not of <b>type</b>.
+     */
+    private int find(String key, byte type) {
+        final int offset = find(key);
+        if (offset > 0 && mBuffer.get(offset + 4) != type) {
+            throw new ClassCastException(key + "'s value is not a " + TYPE_NAMES[type]
+                    + ", found " + TYPE_NAMES[mBuffer.get(offset + 4)]);
+        }
+        return offset;
+    }
+
+    /**
+     * @return Slot of <b>key</b>, -1 if absent.
+     */
+    private int findSlot(String key) {
+        final int hash = hash(key);
+        final int mask = mSlotCount - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final int position = slotPosition(slot);
+            final int offset = mBuffer.getInt(position + 4);
+            if (offset == EMPTY) {
+                return -1;
+            }
+            if (offset != REMOVED && mBuffer.getInt(position) == hash && isInData(offset) && keyEquals(offset, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private void delete(String key) {
+        invalidate(key);
+        final int slot = findSlot(key);
+        if (slot < 0) {
+            return;
+        }
+        final int position = slotPosition(slot);
+        final int offset = mBuffer.getInt(position + 4);
+        addHeader(OFFSET_GARBAGE, mBuffer.getInt(offset));
+        mBuffer.putInt(position + 4, REMOVED);
+    }
+
+    private void put(String key, Object value) throws IOException {
+        invalidate(key);
+        final byte type = typeOf(value);
+        final int valueLength = valueLength(type, value);
+        final int slot = findSlot(key);
+        if (slot >= 0) {
+            final int offset = mBuffer.getInt(slotPosition(slot) + 4);
+            if (mBuffer.get(offset + 4) == type && mBuffer.getInt(offset) == entryLength(key, valueLength)) {
+                // Same size, update in place.
+                writeValue(valueOffset(offset), type, value);
+                mBuffer.putInt(offset + mBuffer.getInt(offset) - 4, checksum(offset));
+                return;
+            }
+        }
+        final int length = entryLength(key, valueLength);
+        final boolean slotsFull = (slot < 0) && (getHeader(OFFSET_USED_SLOTS) + 1) * 2 > mSlotCount;
+        final boolean dataFull = getHeader(OFFSET_DATA_END) + length > mDataStart + getHeader(OFFSET_DATA_CAPACITY);
+        if (slotsFull || dataFull) {
+            grow(key, value, length);
+            return;
+        }
+        final int offset = getHeader(OFFSET_DATA_END);
+        writeEntry(offset, key, type, value, length);
+        mBuffer.putInt(OFFSET_DATA_END, offset + length);
+        if (slot >= 0) {
+            final int position = slotPosition(slot);
+            addHeader(OFFSET_GARBAGE, mBuffer.getInt(mBuffer.getInt(position + 4)));
+            mBuffer.putInt(position + 4, offset);
+        } else {
+            insertSlot(hash(key), offset);
+        }
+    }
+
+    /**
+     * Rebuilds the file with the live entries & the new one, in a larger file if needed.
+     */
+    private void grow(String key, Object value, int length) throws IOException {
+        final Map<String, Object> entries = readEntries();
+        entries.put(key, value);
+        int slotCount = mSlotCount;
+        while (entries.size() * 2 > slotCount) {
+            slotCount *= 2;
+        }
+        final int liveBytes = getHeader(OFFSET_DATA_END) - mDataStart - getHeader(OFFSET_GARBAGE) + length;
+        int capacity = getHeader(OFFSET_DATA_CAPACITY);
+        while (liveBytes * 2 > capacity) {
+            capacity *= 2;
+        }
+        rebuild(slotCount, capacity, entries);
+    }
+
+    /**
+     * Writes the entries to a new file & maps it. The file replaces the current one once forced on the disk
+     * thread, see {@link #publish(MappedByteBuffer, File)}. The old mapping stays valid for writes still being forced.
+     */
+    private void rebuild(int slotCount, int capacity, Map<String, Object> entries) throws IOException {
+        synchronized (mDecoded) {
+            mDecoded.clear();
+        }
+        if (mUnpublished != null && !mUnpublished.delete()) {
+            Log.w(TAG, "Failed to delete " + mUnpublished);
+        }
+        // Alternates, so that a file still mapped for a pending force is never truncated.
+        final File tmp = new File(mFile.getPath() + ".tmp" + (++mRebuilds & 1));
+        final RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(0);
+            out.setLength(HEADER_LENGTH + slotCount * SLOT_LENGTH + capacity);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(slotCount);
+            out.writeInt(capacity);
+            out.writeInt(HEADER_LENGTH + slotCount * SLOT_LENGTH);
+        } finally {
+            out.close();
+        }
+        if (!map(tmp)) {
+            throw new IOException("Failed to map " + tmp);
+        }
+        int dataEnd = mDataStart;
+        for (final Map.Entry<String, Object> entry : entries.entrySet()) {
+            final byte type = typeOf(entry.getValue());
+            final int length = entryLength(entry.getKey(), valueLength(type, entry.getValue()));
+            writeEntry(dataEnd, entry.getKey(), type, entry.getValue(), length);
+            insertSlot(hash(entry.getKey()), dataEnd);
+            dataEnd += length;
+        }
+        mBuffer.putInt(OFFSET_DATA_END, dataEnd);
+        mUnpublished = tmp;
+    }
+
+    private void insertSlot(int hash, int offset) {
+        final int mask = mSlotCount - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final int position = slotPosition(slot);
+            final int current = mBuffer.getInt(position + 4);
+            if (current == EMPTY || current == REMOVED) {
+                mBuffer.putInt(position, hash);
+                mBuffer.putInt(position + 4, offset);
+                if (current == EMPTY) {
+                    addHeader(OFFSET_USED_SLOTS, 1);
+                }
+                return;
+            }
+        }
+    }
+
+    private Map<String, Object> readEntries() {
+        final Map<String, Object> entries = new HashMap<String, Object>();
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            final int offset = mBuffer.getInt(slotPosition(slot) + 4);
+            if (offset > 0 && isValid(offset)) {
+                entries.put(readChars(offset + 5), readValue(offset));
+            }
+        }
+        return entries;
+    }
+
+    private void writeEntry(int offset, String key, byte type, Object value, int length) {
+        mBuffer.putInt(offset, length);
+        mBuffer.put(offset + 4, type);
+        writeChars(offset + 5, key);
+        writeValue(valueOffset(offset), type, value);
+        mBuffer.putInt(offset + length - 4, checksum(offset));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(int offset, byte type, Object value) {
+        switch (type) {
+            case TYPE_STRING:
+                writeChars(offset, (String) value);
+                break;
+            case TYPE_INT:
+                mBuffer.putInt(offset, (Integer) value);
+                break;
+            case TYPE_LONG:
+                mBuffer.putLong(offset, (Long) value);
+                break;
+            case TYPE_FLOAT:
+                mBuffer.putFloat(offset, (Float) value);
+                break;
+            case TYPE_BOOLEAN:
+                mBuffer.put(offset, (byte) ((Boolean) value ? 1 : 0));
+                break;
+            default:
+                final Set<String> values = (Set<String>) value;
+                mBuffer.putInt(offset, values.size());
+                offset += 4;
+                for (final String item : values) {
+                    offset = writeChars(offset, item);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Same as {@link #readValue(int)}, Strings & String sets are cached. Must hold the read lock.
+     */
+    private Object readDecoded(String key, int offset) {
+        final byte type = mBuffer.get(offset + 4);
+        if (type != TYPE_STRING && type != TYPE_STRING_SET) {
+            return readValue(offset);
+        }
+        synchronized (mDecoded) {
+            final Object decoded = mDecoded.get(key);
+            if (decoded != null) {
+                return decoded;
+            }
+        }
+        Object value = readValue(offset);
+        if (type == TYPE_STRING_SET) {
+            // Shared by all readers.
+            value = Collections.unmodifiableSet((Set<?>) value);
+        }
+        synchronized (mDecoded) {
+            mDecoded.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Must hold the write lock.
+     */
+    private void invalidate(String key) {
+        synchronized (mDecoded) {
+            mDecoded.remove(key);
+        }
+    }
+
+    private Object readValue(int offset) {
+        final byte type = mBuffer.get(offset + 4);
+        int position = valueOffset(offset);
+        switch (type) {
+            case TYPE_STRING:
+                return readChars(position);
+            case TYPE_INT:
+                return mBuffer.getInt(position);
+            case TYPE_LONG:
+                return mBuffer.getLong(position);
+            case TYPE_FLOAT:
+                return mBuffer.getFloat(position);
+            case TYPE_BOOLEAN:
+                return mBuffer.get(position) != 0;
+            default:
+                final int size = mBuffer.getInt(position);
+                position += 4;
+                final Set<String> values = new HashSet<String>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    final String item = readChars(position);
+                    values.add(item);
+                    position += charsLength(item);
+                }
+                return values;
+        }
+    }
+
+    /**
+     * @return Offset after the written chars.
+     */
+    private int writeChars(int offset, String value) {
+        if (value == null) {
+            mBuffer.putInt(offset, -1);
+            return offset + 4;
+        }
+        final int length = value.length();
+        mBuffer.putInt(offset, length);
+        offset += 4;
+        for (int i = 0; i < length; i++, offset += 2) {
+            mBuffer.putChar(offset, value.charAt(i));
+        }
+        return offset;
+    }
+
+    private String readChars(int offset) {
+        final int length = mBuffer.getInt(offset);
+        if (length < 0) {
+            return null;
+        }
+        final char[] chars = new char[length];
+        offset += 4;
+        for (int i = 0; i < chars.length; i++, offset += 2) {
+            chars[i] = mBuffer.getChar(offset);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Compares without decoding the stored key.
+     */
+    private boolean keyEquals(int offset, String key) {
+        int position = offset + 5;
+        final int length = key.length();
+        if (mBuffer.getInt(position) != length) {
+            return false;
+        }
+        position += 4;
+        for (int i = 0; i < length; i++, position += 2) {
+            if (mBuffer.getChar(position) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #keyEquals(int, String)}, for the start of the key.
+     */
+    private boolean keyStartsWith(int offset, String prefix) {
+        int position = offset + 5;
+        final int length = prefix.length();
+        if (!isInData(offset) || mBuffer.getInt(position) < length
+                || position + 4 + length * 2 > getHeader(OFFSET_DATA_END)) {
+            return false;
+        }
+        position += 4;
+        for (int i = 0; i < length; i++, position += 2) {
+            if (mBuffer.getChar(position) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the entry is within the data region & it's checksum matches.
+     */
+    private boolean isValid(int offset) {
+        if (!isInData(offset)) {
+            return false;
+        }
+        final int length = mBuffer.getInt(offset);
+        return length > 13 && offset + length <= getHeader(OFFSET_DATA_END)
+                && checksum(offset) == mBuffer.getInt(offset + length - 4);
+    }
+
+    private boolean isInData(int offset) {
+        return offset >= mDataStart && offset + 13 <= getHeader(OFFSET_DATA_END);
+    }
+
+    /**
+     * FNV-1a of the entry, from the type to the end of the value.
+     */
+    private int checksum(int offset) {
+        final ByteBuffer buffer = mBuffer;
+        final int end = offset + buffer.getInt(offset) - 4;
+        int hash = 0x811C9DC5;
+        for (int i = offset + 4; i < end; i++) {
+            hash ^= buffer.get(i) & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    private int valueOffset(int offset) {
+        return offset + 5 + 4 + mBuffer.getInt(offset + 5) * 2;
+    }
+
+    private int slotPosition(int slot) {
+        return HEADER_LENGTH + slot * SLOT_LENGTH;
+    }
+
+    private int getHeader(int offset) {
+        return mBuffer.getInt(offset);
+    }
+
+    private void addHeader(int offset, int delta) {
+        mBuffer.putInt(offset, mBuffer.getInt(offset) + delta);
+    }
+
+    private static int hash(String key) {
+        final int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static byte typeOf(Object value) {
+        if (value instanceof String) {
+            return TYPE_STRING;
+        } else if (value instanceof Integer) {
+            return TYPE_INT;
+        } else if (value instanceof Long) {
+            return TYPE_LONG;
+        } else if (value instanceof Float) {
+            return TYPE_FLOAT;
+        } else if (value instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        } else if (value instanceof Set) {
+            return TYPE_STRING_SET;
+        }
+        throw new IllegalArgumentException("Unsupported type: " + value.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int valueLength(byte type, Object value) {
+        switch (type) {
+            case TYPE_STRING:
+                return charsLength((String) value);
+            case TYPE_INT:
+            case TYPE_FLOAT:
+                return 4;
+            case TYPE_LONG:
+                return 8;
+            case TYPE_BOOLEAN:
+                return 1;
+            default:
+                int length = 4;
+                for (final String item : (Set<String>) value) {
+                    length += charsLength(item);
+                }
+                return length;
+        }
+    }
+
+    private static int charsLength(String value) {
+        return value == null ? 4 : 4 + value.length() * 2;
+    }
+
+    /**
+     * @return <code>length, type, key, value, checksum</code>
+     */
+    private static int entryLength(String key, int valueLength) {
+        return 4 + 1 + 4 + key.length() * 2 + valueLength + 4;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opens {@link MultiProcessPreferences}, stored in <code>files/preferences/&lt;name&gt;.mlog</code>
+ * with the version header in <code>&lt;name&gt;.mlock</code>.
+ *
+ * @see PreferenceStores#multiProcess()
+ */
+class MultiProcessPreferenceStore implements PreferenceStore {
+
+    private static final String EXTENSION = ".mlog";
+    private static final String HEADER_EXTENSION = ".mlock";
+    /**
+     * Opened files, a process holds one instance per file as {@link java.nio.channels.FileLock}s are per process.
+     */
+    private static final Map<String, MultiProcessPreferences> mOpened = new HashMap<String, MultiProcessPreferences>();
+
+    @Override
+    public SharedPreferences open(Context context, String name) {
+        if (name == null) {
+            name = PreferenceStores.defaultName(context);
+        }
+        final File directory = new File(context.getFilesDir(), LogPreferenceStore.DIRECTORY);
+        final File file = new File(directory, name + EXTENSION);
+        synchronized (mOpened) {
+            MultiProcessPreferences preferences = mOpened.get(file.getPath());
+            if (preferences == null) {
+                try {
+                    preferences = new MultiProcessPreferences(file, new File(directory, name + HEADER_EXTENSION),
+                            LogPreferences.DEFAULT_MIN_GARBAGE, AbstractPreferences.MAIN_THREAD);
+                } catch (final IOException e) {
+                    throw new IllegalStateException("Failed to open " + file, e);
+                }
+                mOpened.put(file.getPath(), preferences);
+            }
+            return preferences;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MultiProcessPreferenceStore;
+    }
+
+    @Override
+    public int hashCode() {
+        return MultiProcessPreferenceStore.class.hashCode();
+    }
+}
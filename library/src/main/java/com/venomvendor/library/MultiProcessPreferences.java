@@ -0,0 +1,572 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Preferences shared by processes, stored as the log of {@link LogPreferences} next to a small mapped header.
+ * <p/>
+ * Header file: <code>version, epoch, log length</code>. Writers hold an exclusive {@link FileLock} on it,
+ * append their records to the log, then increment the version. A read compares the mapped version with the
+ * last one seen, which costs no system call. On a change, only the records appended since are replayed,
+ * & the read notifies the listeners of the changed keys. A compaction increments the epoch, which reloads the log.
+ * <p/>
+ * Counters are written by {@link #add(String, byte, long, boolean)}, as a delta summed under the exclusive lock.
+ */
+class MultiProcessPreferences extends AbstractPreferences {
+
+    private static final int OFFSET_VERSION = 0;
+    private static final int OFFSET_EPOCH = 8;
+    private static final int OFFSET_LENGTH = 16;
+    private static final int HEADER_FILE_LENGTH = 24;
+
+    private final File mLogFile;
+    private final int mMinGarbage;
+    private final FileChannel mHeaderChannel;
+    private final MappedByteBuffer mHeader;
+    /**
+     * Guards the file state below, {@link FileLock}s are per process, not per thread.
+     */
+    private final Object mFileLock = new Object();
+    private volatile long mVersion = -1;
+    private long mEpoch = -1;
+    private long mLogLength;
+    private int mRecords;
+    private final Map<String, Object> mMap = new HashMap<String, Object>();
+    /**
+     * Changes committed to {@link #mMap} but not yet in the log, re-applied over the changes of other processes.
+     * Guarded by {@link #mMap}.
+     */
+    private final List<Unwritten> mUnwritten = new ArrayList<Unwritten>();
+    /**
+     * Keys changed by other processes, & null if they cleared the preferences, notified by the next read.
+     * Guarded by {@link #mMap}.
+     */
+    private final Set<String> mUnnotified = new HashSet<String>();
+    private volatile boolean mNotifyPending;
+    /**
+     * Incremented each time records of other processes are read.
+     */
+    private volatile long mExternalVersion;
+
+    MultiProcessPreferences(File logFile, File headerFile, int minGarbage, Executor callbackExecutor)
+            throws IOException {
+        super(callbackExecutor);
+        mLogFile = logFile;
+        mMinGarbage = minGarbage;
+        final File parent = headerFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        mHeaderChannel = new RandomAccessFile(headerFile, "rw").getChannel();
+        final FileLock lock = mHeaderChannel.lock();
+        try {
+            if (mHeaderChannel.size() < HEADER_FILE_LENGTH) {
+                mHeaderChannel.write(ByteBuffer.allocate(HEADER_FILE_LENGTH), 0);
+                mHeaderChannel.force(true);
+            }
+        } finally {
+            lock.release();
+        }
+        mHeader = mHeaderChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_FILE_LENGTH);
+    }
+
+    @Override
+    protected Object read(String key) {
+        refresh();
+        synchronized (mMap) {
+            return mMap.get(key);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> read(Collection<String> keys) {
+        refresh();
+        final Map<String, Object> values = new HashMap<String, Object>();
+        synchronized (mMap) {
+            for (final String key : keys) {
+                final Object value = mMap.get(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    protected Map<String, ?> readAll() {
+        refresh();
+        synchronized (mMap) {
+            return new HashMap<String, Object>(mMap);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> readPrefix(String prefix) {
+        refresh();
+        final Map<String, Object> values = new HashMap<String, Object>();
+        synchronized (mMap) {
+            for (final Map.Entry<String, Object> entry : mMap.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    values.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Adds <b>delta</b> to the number stored in the key & waits for the write.<br>
+     * The sum is computed again under the exclusive {@link FileLock}, over the value written by the other
+     * processes, so that concurrent increments all add up.
+     *
+     * @param type {@link PrimitiveIndex#INT} or {@link PrimitiveIndex#LONG}, 0 to keep the stored type.
+     * @param returnNew true to return the new value, false for the previous one.
+     * @return The value as written, or the value it replaced.
+     * @throws ClassCastException if the key holds a value of another type.
+     */
+    long add(String key, byte type, long delta, boolean returnNew) throws ClassCastException {
+        final Delta change = new Delta(type, delta);
+        final Map<String, Object> changes = new HashMap<String, Object>(1);
+        changes.put(key, change);
+        write(changes, false, true);
+        synchronized (mMap) {
+            if (returnNew) {
+                return change.value;
+            }
+            return change.integer ? (int) (change.value - delta) : change.value - delta;
+        }
+    }
+
+    @Override
+    protected void commitToMemory(Map<String, Object> changes, boolean clear) {
+        // Called with the write lock, listeners are notified by the next read.
+        update();
+        synchronized (mMap) {
+            for (final Map.Entry<String, Object> change : changes.entrySet()) {
+                if (change.getValue() instanceof Delta) {
+                    ((Delta) change.getValue()).check(change.getKey(), mMap.get(change.getKey()));
+                }
+            }
+            apply(changes, clear);
+            mUnwritten.add(new Unwritten(changes, clear));
+        }
+    }
+
+    @Override
+    protected void writeToDisk(Map<String, Object> changes, boolean clear) throws IOException {
+        try {
+            synchronized (mFileLock) {
+                final FileLock lock = mHeaderChannel.lock();
+                try {
+                    // Records of other processes precede these changes in the log, so these win.
+                    // Catching up also sums the deltas over the values of other processes.
+                    catchUp();
+                    append(encode(changes, clear));
+                    mRecords += changes.size() + (clear ? 1 : 0);
+                    final int live;
+                    synchronized (mMap) {
+                        live = mMap.size();
+                    }
+                    final int garbage = mRecords - live;
+                    if (garbage >= mMinGarbage && garbage > live) {
+                        compact();
+                    }
+                    publish();
+                } finally {
+                    lock.release();
+                }
+            }
+        } finally {
+            // Disk writes run in commit order.
+            synchronized (mMap) {
+                mUnwritten.remove(0);
+            }
+        }
+    }
+
+    /**
+     * @return A number which changes once the changes of other processes are read, after replaying them.
+     */
+    long externalVersion() {
+        update();
+        return mExternalVersion;
+    }
+
+    /**
+     * @return The records of the changes, a {@link Delta} is written as it's sum.
+     */
+    private byte[] encode(Map<String, Object> changes, boolean clear) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        if (clear) {
+            LogPreferences.writeRecord(out, LogPreferences.OP_CLEAR, null, null);
+        }
+        synchronized (mMap) {
+            for (final Map.Entry<String, Object> change : changes.entrySet()) {
+                Object value = change.getValue();
+                if (value instanceof Delta) {
+                    value = ((Delta) value).boxed();
+                }
+                LogPreferences.writeRecord(out, LogPreferences.opOf(value), change.getKey(), value);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Applies the changes to {@link #mMap}, each {@link Delta} is summed with the current value.
+     * Must hold {@link #mMap}.
+     */
+    private void apply(Map<String, Object> changes, boolean clear) {
+        Map<String, Object> sums = null;
+        for (final Map.Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() instanceof Delta) {
+                if (sums == null) {
+                    sums = new HashMap<String, Object>();
+                }
+                final Object current = clear ? null : mMap.get(change.getKey());
+                sums.put(change.getKey(), ((Delta) change.getValue()).sum(current));
+            }
+        }
+        LogPreferences.apply(mMap, changes, clear);
+        if (sums != null) {
+            mMap.putAll(sums);
+        }
+    }
+
+    /**
+     * Replays the changes of other processes & notifies them. Must not hold any lock.
+     */
+    private void refresh() {
+        update();
+        if (!mNotifyPending) {
+            return;
+        }
+        final Set<String> changed;
+        synchronized (mMap) {
+            changed = new HashSet<String>(mUnnotified);
+            mUnnotified.clear();
+            mNotifyPending = false;
+        }
+        final boolean cleared = changed.remove(null);
+        if (cleared || !changed.isEmpty()) {
+            notifyListeners(changed, cleared);
+        }
+    }
+
+    /**
+     * Replays the changes of other processes, if the version changed.
+     */
+    private void update() {
+        if (mHeader.getLong(OFFSET_VERSION) == mVersion) {
+            return;
+        }
+        synchronized (mFileLock) {
+            try {
+                final FileLock lock = mHeaderChannel.lock(0, HEADER_FILE_LENGTH, true);
+                try {
+                    catchUp();
+                } finally {
+                    lock.release();
+                }
+            } catch (final IOException e) {
+                throw new IllegalStateException("Failed to read " + mLogFile, e);
+            }
+        }
+    }
+
+    /**
+     * Reads the records written since the last version seen. Must hold {@link #mFileLock} & a {@link FileLock}.
+     */
+    private void catchUp() throws IOException {
+        final long version = mHeader.getLong(OFFSET_VERSION);
+        if (version == mVersion) {
+            return;
+        }
+        final long epoch = mHeader.getLong(OFFSET_EPOCH);
+        final long length = mHeader.getLong(OFFSET_LENGTH);
+        final Set<String> changed = new HashSet<String>();
+        if (epoch != mEpoch) {
+            // Compacted by another process, or not yet loaded.
+            final Map<String, Object> loaded = new HashMap<String, Object>();
+            mRecords = replay(readLog(LogPreferences.HEADER_LENGTH, length), loaded, null);
+            synchronized (mMap) {
+                if (mVersion != -1) {
+                    changed.addAll(mMap.keySet());
+                    changed.addAll(loaded.keySet());
+                    for (final Map.Entry<String, Object> entry : loaded.entrySet()) {
+                        if (entry.getValue().equals(mMap.get(entry.getKey()))) {
+                            changed.remove(entry.getKey());
+                        }
+                    }
+                }
+                mMap.clear();
+                mMap.putAll(loaded);
+                reapplyUnwritten();
+            }
+        } else if (length > mLogLength) {
+            final byte[] tail = readLog(mLogLength, length);
+            synchronized (mMap) {
+                revertDeltas();
+                mRecords += replay(tail, mMap, changed);
+                reapplyUnwritten();
+            }
+        }
+        if (epoch != mEpoch || length > mLogLength) {
+            mExternalVersion++;
+        }
+        mEpoch = epoch;
+        mLogLength = Math.max(length, LogPreferences.HEADER_LENGTH);
+        if (!changed.isEmpty()) {
+            synchronized (mMap) {
+                if (changed.contains(null)) {
+                    mUnnotified.clear();
+                }
+                mUnnotified.addAll(changed);
+                mNotifyPending = true;
+            }
+        }
+        mVersion = version;
+    }
+
+    /**
+     * Restores the values the unwritten deltas were added to, so that reapplying does not add them twice.
+     * Must hold {@link #mMap}.
+     */
+    private void revertDeltas() {
+        for (int i = mUnwritten.size() - 1; i >= 0; i--) {
+            for (final Map.Entry<String, Object> change : mUnwritten.get(i).changes.entrySet()) {
+                if (change.getValue() instanceof Delta) {
+                    final Object base = ((Delta) change.getValue()).base;
+                    if (base == null) {
+                        mMap.remove(change.getKey());
+                    } else {
+                        mMap.put(change.getKey(), base);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Must hold {@link #mMap}.
+     */
+    private void reapplyUnwritten() {
+        for (final Unwritten unwritten : mUnwritten) {
+            apply(unwritten.changes, unwritten.clear);
+        }
+    }
+
+    /**
+     * Applies the records to <b>map</b>.
+     *
+     * @param changed receives the changed keys & null if the map was cleared, null if not needed.
+     * @return The number of records.
+     */
+    private static int replay(byte[] log, Map<String, Object> map, Set<String> changed) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(log);
+        final CRC32 crc = new CRC32();
+        int records = 0;
+        while (buffer.remaining() >= 8) {
+            final int length = buffer.getInt();
+            if (length <= 0 || length + 4 > buffer.remaining()) {
+                throw new IOException("Invalid record length " + length);
+            }
+            final byte[] payload = new byte[length];
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                throw new IOException("Invalid record checksum");
+            }
+            final String key = LogPreferences.readPayload(payload, map);
+            if (changed != null) {
+                if (key == null) {
+                    changed.clear();
+                }
+                changed.add(key);
+            }
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * @return The bytes of the log from <b>start</b> to <b>end</b>.
+     */
+    private byte[] readLog(long start, long end) throws IOException {
+        if (end <= start) {
+            return new byte[0];
+        }
+        final byte[] bytes = new byte[(int) (end - start)];
+        final RandomAccessFile file = new RandomAccessFile(mLogFile, "r");
+        try {
+            file.seek(start);
+            file.readFully(bytes);
+        } finally {
+            file.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the records after the last valid one, overwriting the torn record of an interrupted write.
+     */
+    private void append(byte[] records) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(mLogFile, "rw");
+        try {
+            if (mLogLength <= LogPreferences.HEADER_LENGTH) {
+                file.seek(0);
+                file.writeInt(LogPreferences.MAGIC);
+                file.writeInt(LogPreferences.VERSION);
+                mLogLength = LogPreferences.HEADER_LENGTH;
+            }
+            file.seek(mLogLength);
+            file.write(records);
+            file.setLength(mLogLength + records.length);
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        mLogLength += records.length;
+    }
+
+    /**
+     * Rewrites the log with only the live entries, in a new epoch.
+     */
+    private void compact() throws IOException {
+        final Map<String, Object> snapshot;
+        synchronized (mMap) {
+            snapshot = new HashMap<String, Object>(mMap);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(mMap.size() * 32 + 8);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(LogPreferences.MAGIC);
+        out.writeInt(LogPreferences.VERSION);
+        for (final Map.Entry<String, Object> entry : snapshot.entrySet()) {
+            LogPreferences.writeRecord(out, LogPreferences.opOf(entry.getValue()), entry.getKey(), entry.getValue());
+        }
+        final File tmp = new File(mLogFile.getPath() + ".tmp");
+        final RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+        try {
+            file.setLength(0);
+            file.write(bytes.toByteArray());
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        if (!tmp.renameTo(mLogFile)) {
+            throw new IOException("Failed to replace " + mLogFile);
+        }
+        mRecords = snapshot.size();
+        mLogLength = bytes.size();
+        mEpoch++;
+    }
+
+    /**
+     * Makes the appended records visible to other processes. Must hold the exclusive {@link FileLock}.
+     */
+    private void publish() {
+        final long version = mVersion + 1;
+        mHeader.putLong(OFFSET_EPOCH, mEpoch);
+        mHeader.putLong(OFFSET_LENGTH, mLogLength);
+        mHeader.putLong(OFFSET_VERSION, version);
+        mHeader.force();
+        mVersion = version;
+    }
+
+    /**
+     * Change of a counter, summed with the value it applies to each time it is applied.
+     */
+    private static final class Delta {
+        final byte type;
+        final long delta;
+        /**
+         * Sum of the last application, guarded by {@link #mMap}.
+         */
+        long value;
+        boolean integer;
+        /**
+         * Value of the last application, before the sum.
+         */
+        Object base;
+
+        Delta(byte type, long delta) {
+            this.type = type;
+            this.delta = delta;
+        }
+
+        /**
+         * @throws ClassCastException if <b>current</b> is not a number of the type.
+         */
+        void check(String key, Object current) throws ClassCastException {
+            if (current != null && !(current instanceof Integer && type != PrimitiveIndex.LONG)
+                    && !(current instanceof Long && type != PrimitiveIndex.INT)) {
+                throw new ClassCastException(key + " holds a " + current.getClass().getSimpleName());
+            }
+        }
+
+        /**
+         * @param current value to add to, replaced if of another type, e.g. written by another process.
+         * @return The sum, an int for an int counter.
+         */
+        Object sum(Object current) {
+            base = current;
+            integer = type == PrimitiveIndex.INT || type == 0 && current instanceof Integer;
+            if (integer) {
+                value = (int) ((current instanceof Integer ? (Integer) current : 0) + delta);
+            } else {
+                value = (current instanceof Long ? (Long) current : 0) + delta;
+            }
+            return boxed();
+        }
+
+        Object boxed() {
+            return integer ? (Object) (int) value : (Object) value;
+        }
+    }
+
+    private static final class Unwritten {
+        final Map<String, Object> changes;
+        final boolean clear;
+
+        Unwritten(Map<String, Object> changes, boolean clear) {
+            this.changes = changes;
+            this.clear = clear;
+        }
+    }
+}
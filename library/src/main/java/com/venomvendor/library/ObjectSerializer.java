@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+/**
+ * Converts the values of {@link SimpleSharedPreferences#putObject(String, Object, ObjectSerializer)} to bytes.
+ * <p/>
+ * <pre>
+ * static final ObjectSerializer&lt;Config&gt; CONFIG = new ObjectSerializer&lt;Config&gt;() {
+ *     public byte[] serialize(Config value) {
+ *         return value.toByteArray();
+ *     }
+ *
+ *     public Config deserialize(byte[] bytes) {
+ *         return Config.parseFrom(bytes);
+ *     }
+ * };
+ * </pre>
+ *
+ * @param <T> type of the values.
+ */
+public interface ObjectSerializer<T> {
+
+    /**
+     * @return The bytes of a non null value, not modified afterwards.
+     */
+    byte[] serialize(T value);
+
+    /**
+     * @param bytes returned by {@link #serialize(Object)}, must not be modified.
+     */
+    T deserialize(byte[] bytes);
+}
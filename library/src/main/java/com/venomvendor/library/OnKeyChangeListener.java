@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+/**
+ * Listener of a single key, or of the keys starting with a prefix.
+ * <p/>
+ * <pre>
+ * mPreferences.registerListener(LAUNCH_COUNT, new OnKeyChangeListener&lt;Integer&gt;() {
+ *     public void onKeyChanged(String key, Integer value) {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ * Listeners are held weakly, keep a reference till they are unregistered.
+ *
+ * @param <T> type of the value.
+ * @see SimpleSharedPreferences#registerListener(PrefKey, OnKeyChangeListener)
+ */
+public interface OnKeyChangeListener<T> {
+
+    /**
+     * Called on the thread notifying the {@link android.content.SharedPreferences.OnSharedPreferenceChangeListener}s,
+     * the main thread for the default backend.
+     *
+     * @param key   changed key, null if all the preferences were cleared.
+     * @param value new value, the default value of a {@link PrefKey} if removed.
+     *              null if removed, or cleared, for listeners without a {@link PrefKey}.
+     */
+    void onKeyChanged(String key, T value);
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.util.Set;
+
+/**
+ * Typed key of a preference, holding it's name & default value.
+ * <p/>
+ * <pre>
+ * static final PrefKey.IntKey LAUNCH_COUNT = new PrefKey.IntKey("launch_count", 0);
+ * ...
+ * int count = mPreferences.get(LAUNCH_COUNT);
+ * mPreferences.put(LAUNCH_COUNT, count + 1);
+ * </pre>
+ * Declare keys as constants, they are immutable & can be shared across threads.
+ *
+ * @param <T> type of the value.
+ * @see SimpleSharedPreferences#get(PrefKey.IntKey)
+ */
+public abstract class PrefKey<T> {
+
+    final String name;
+
+    PrefKey(String name) {
+        if (name == null) {
+            throw new NullPointerException("Key name cannot be null");
+        }
+        this.name = name;
+    }
+
+    /**
+     * @return The name used in {@link android.content.SharedPreferences}.
+     */
+    public final String name() {
+        return name;
+    }
+
+    @Override
+    public final int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public final boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        final PrefKey<?> other = (PrefKey<?>) obj;
+        return name.equals(other.name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * @return The value of this key in <b>preferences</b>, the default value if absent.
+     */
+    abstract T read(SimpleSharedPreferences preferences);
+
+    /**
+     * Key of a {@link String}.
+     */
+    public static final class StringKey extends PrefKey<String> {
+        final String defValue;
+
+        public StringKey(String name, String defValue) {
+            super(name);
+            this.defValue = defValue;
+        }
+
+        public String defValue() {
+            return defValue;
+        }
+
+        @Override
+        String read(SimpleSharedPreferences preferences) {
+            return preferences.get(this);
+        }
+    }
+
+    /**
+     * Key of a {@code Set<String>}.
+     */
+    public static final class StringSetKey extends PrefKey<Set<String>> {
+        final Set<String> defValue;
+
+        public StringSetKey(String name, Set<String> defValue) {
+            super(name);
+            this.defValue = defValue;
+        }
+
+        public Set<String> defValue() {
+            return defValue;
+        }
+
+        @Override
+        Set<String> read(SimpleSharedPreferences preferences) {
+            return preferences.get(this);
+        }
+    }
+
+    /**
+     * Key of an {@code int}.
+     */
+    public static final class IntKey extends PrefKey<Integer> {
+        final int defValue;
+
+        public IntKey(String name, int defValue) {
+            super(name);
+            this.defValue = defValue;
+        }
+
+        public int defValue() {
+            return defValue;
+        }
+
+        @Override
+        Integer read(SimpleSharedPreferences preferences) {
+            return preferences.get(this);
+        }
+    }
+
+    /**
+     * Key of a {@code long}.
+     */
+    public static final class LongKey extends PrefKey<Long> {
+        final long defValue;
+
+        public LongKey(String name, long defValue) {
+            super(name);
+            this.defValue = defValue;
+        }
+
+        public long defValue() {
+            return defValue;
+        }
+
+        @Override
+        Long read(SimpleSharedPreferences preferences) {
+            return preferences.get(this);
+        }
+    }
+
+    /**
+     * Key of a {@code float}.
+     */
+    public static final class FloatKey extends PrefKey<Float> {
+        final float defValue;
+
+        public FloatKey(String name, float defValue) {
+            super(name);
+            this.defValue = defValue;
+        }
+
+        public float defValue() {
+            return defValue;
+        }
+
+        @Override
+        Float read(SimpleSharedPreferences preferences) {
+            return preferences.get(this);
+        }
+    }
+
+    /**
+     * Key of a {@code boolean}.
+     */
+    public static final class BooleanKey extends PrefKey<Boolean> {
+        final boolean defValue;
+
+        public BooleanKey(String name, boolean defValue) {
+            super(name);
+            this.defValue = defValue;
+        }
+
+        public boolean defValue() {
+            return defValue;
+        }
+
+        @Override
+        Boolean read(SimpleSharedPreferences preferences) {
+            return preferences.get(this);
+        }
+    }
+}
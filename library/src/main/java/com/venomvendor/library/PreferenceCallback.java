@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+/**
+ * Receives the result of an asynchronous read, e.g. {@link SimpleSharedPreferences#getIntAsync}.
+ *
+ * @param <T> type of the value.
+ */
+public interface PreferenceCallback<T> {
+
+    /**
+     * Called on the executor passed with the read, once the preferences are loaded.
+     */
+    void onResult(T value);
+
+    /**
+     * Called on the executor passed with the read if it failed, e.g. with a {@link ClassCastException}
+     * if the key holds another type.
+     */
+    void onError(Throwable error);
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+/**
+ * Receives the costs of {@link SimpleSharedPreferences} operations, see
+ * {@link SimpleSharedPreferences#setMetrics(PreferenceMetrics)}.<br>
+ * Called on the thread doing the operation, implementations must be thread safe & fast.
+ *
+ * @see HistogramMetrics
+ */
+public interface PreferenceMetrics {
+
+    /**
+     * Timed operations.
+     */
+    enum Operation {
+        GET_STRING, GET_STRING_SET, GET_INT, GET_LONG, GET_FLOAT, GET_BOOLEAN,
+        PUT_STRING, PUT_STRING_SET, PUT_INT, PUT_LONG, PUT_FLOAT, PUT_BOOLEAN,
+        REMOVE, CLEAR,
+        /**
+         * A String compressed by {@link SimpleSharedPreferences#enableCompression(int)}.
+         */
+        COMPRESS,
+        /**
+         * A compressed String was read, decompressed or from the cache.
+         */
+        DECOMPRESS
+    }
+
+    /**
+     * @param durationNanos time taken by the operation, including a failed one.
+     */
+    void onOperation(Operation operation, long durationNanos);
+
+    /**
+     * An {@link android.content.SharedPreferences.Editor} was written.
+     *
+     * @param commit true for {@link android.content.SharedPreferences.Editor#commit()},
+     *               false for {@link android.content.SharedPreferences.Editor#apply()}.
+     */
+    void onDiskWrite(boolean commit);
+
+    /**
+     * A String set was encoded by the {@link StringSetCodec}.
+     *
+     * @param size          number of values in the set.
+     * @param encodedLength number of chars stored, the sum of the values for a native set.
+     */
+    void onStringSetEncoded(int size, int encodedLength);
+
+    /**
+     * A String was compressed, see {@link SimpleSharedPreferences#enableCompression(int)}.
+     *
+     * @param length           number of chars of the value.
+     * @param compressedLength number of chars stored, the value is stored uncompressed if it is not shorter.
+     */
+    void onCompressed(int length, int compressedLength);
+
+    /**
+     * A read found a value of another type, whether the {@link ClassCastException} was thrown or not.
+     */
+    void onTypeMismatch(String key, String expectedType);
+}
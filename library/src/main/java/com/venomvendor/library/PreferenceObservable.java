@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stream of the values of one key.<br>
+ * Each {@link #subscribe(Observer)} first receives the current value, then every new value.
+ * Changes within the window are coalesced into one emission of the latest value,
+ * & a value equal to the previous emission is skipped.
+ * Values are read on a dedicated thread, a read waiting for the file to load never delays the writes.
+ * <p/>
+ * <pre>
+ * mSubscription = mPreferences.observe(THEME).subscribe(new PreferenceObservable.Observer&lt;String&gt;() {
+ *     public void onChanged(String theme) {
+ *         applyTheme(theme);
+ *     }
+ *
+ *     public void onError(Throwable error) {
+ *         Log.w(TAG, error);
+ *     }
+ * });
+ * ...
+ * mSubscription.unsubscribe();
+ * </pre>
+ *
+ * @param <T> type of the value.
+ * @see SimpleSharedPreferences#observe(PrefKey, long, Executor)
+ */
+public final class PreferenceObservable<T> {
+
+    private static ExecutorService mEmitExecutor;
+
+    private final SimpleSharedPreferences mPreferences;
+    private final PrefKey<T> mKey;
+    private final long mWindowMillis;
+    private final Executor mExecutor;
+
+    PreferenceObservable(SimpleSharedPreferences preferences, PrefKey<T> key, long windowMillis, Executor executor) {
+        mPreferences = preferences;
+        mKey = key;
+        mWindowMillis = windowMillis;
+        mExecutor = executor;
+    }
+
+    /**
+     * Starts observing, the current value is emitted right away.<br>
+     * Keep a reference of the {@link Subscription}, a subscription which is garbage collected stops emitting.
+     */
+    public Subscription subscribe(Observer<? super T> observer) {
+        if (observer == null) {
+            throw new NullPointerException("Observer cannot be null");
+        }
+        final Subscription subscription = new Subscription(observer);
+        mPreferences.registerChangeSignal(mKey.name, subscription.mSignal);
+        subscription.schedule(0);
+        return subscription;
+    }
+
+    /**
+     * Receives the values, on the executor given to {@link SimpleSharedPreferences#observe(PrefKey, long, Executor)}.
+     */
+    public interface Observer<T> {
+        void onChanged(T value);
+
+        /**
+         * The value could not be read, e.g. the key holds another type or the file failed to load.<br>
+         * The subscription stays active & emits the next readable value.
+         */
+        void onError(Throwable error);
+    }
+
+    private static synchronized ExecutorService getEmitExecutor() {
+        if (mEmitExecutor == null) {
+            mEmitExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "PreferenceObservable");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mEmitExecutor;
+    }
+
+    /**
+     * A subscriber of the stream, see {@link #unsubscribe()}.
+     */
+    public final class Subscription {
+        private final Observer<? super T> mObserver;
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+        private volatile boolean mUnsubscribed;
+        /**
+         * Last emitted value, accessed only by the emitting thread.
+         */
+        private T mLast;
+        private boolean mEmitted;
+        /**
+         * Held by the subscription, the preferences keep only a weak reference.
+         */
+        private final OnKeyChangeListener<Object> mSignal = new OnKeyChangeListener<Object>() {
+            @Override
+            public void onKeyChanged(String key, Object value) {
+                schedule(mWindowMillis);
+            }
+        };
+        private final Runnable mHandOff = new Runnable() {
+            @Override
+            public void run() {
+                getEmitExecutor().execute(mEmit);
+            }
+        };
+        private final Runnable mEmit = new Runnable() {
+            @Override
+            public void run() {
+                mScheduled.set(false);
+                if (mUnsubscribed) {
+                    return;
+                }
+                final T value;
+                try {
+                    value = mKey.read(mPreferences);
+                } catch (final RuntimeException e) {
+                    mEmitted = false;
+                    mExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!mUnsubscribed) {
+                                mObserver.onError(e);
+                            }
+                        }
+                    });
+                    return;
+                }
+                if (mEmitted && (value == null ? mLast == null : value.equals(mLast))) {
+                    return;
+                }
+                mEmitted = true;
+                mLast = value;
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mUnsubscribed) {
+                            mObserver.onChanged(value);
+                        }
+                    }
+                });
+            }
+        };
+
+        Subscription(Observer<? super T> observer) {
+            mObserver = observer;
+        }
+
+        /**
+         * Stops the emissions, including the ones already scheduled.
+         */
+        public void unsubscribe() {
+            mUnsubscribed = true;
+            mPreferences.unregisterListener(mSignal);
+        }
+
+        public boolean isUnsubscribed() {
+            return mUnsubscribed;
+        }
+
+        private void schedule(long delayMillis) {
+            if (mScheduled.compareAndSet(false, true)) {
+                if (delayMillis == 0) {
+                    getEmitExecutor().execute(mEmit);
+                } else {
+                    SimpleSharedPreferences.getFlushScheduler().schedule(mHandOff, delayMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable values of a few keys, read together with {@link SimpleSharedPreferences#snapshot(String...)}.<br>
+ * No write is committed in between the reads, so related keys are consistent with each other.
+ * <p/>
+ * <pre>
+ * PreferenceSnapshot session = mPreferences.snapshot("user_id", "token", "expires_at");
+ * if (session.getLong("expires_at", 0) > now) {
+ *     connect(session.getString("user_id", null), session.getString("token", null));
+ * }
+ * </pre>
+ * Getters throw {@link ClassCastException} like {@link android.content.SharedPreferences},
+ * a key that was not requested is absent.
+ */
+public final class PreferenceSnapshot {
+
+    private final Map<String, Object> mValues;
+    private final StringSetCodec mStringSetCodec;
+
+    PreferenceSnapshot(Map<String, Object> values, StringSetCodec stringSetCodec) {
+        mValues = Collections.unmodifiableMap(values);
+        mStringSetCodec = stringSetCodec;
+    }
+
+    /**
+     * @return true if the key was requested & present.
+     */
+    public boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    /**
+     * @return The stored values, Strings may be compressed & String sets encoded by the {@link StringSetCodec}.
+     */
+    public Map<String, ?> asMap() {
+        return mValues;
+    }
+
+    public String getString(String key, String defValue) throws ClassCastException {
+        final String value = (String) mValues.get(key);
+        return value != null ? decompress(value) : defValue;
+    }
+
+    /**
+     * @return The decoded values, <b>defValues</b> if absent or not a String set.
+     */
+    public Set<String> getStringSet(String key, Set<String> defValues) throws ClassCastException {
+        final Object stored = mValues.get(key);
+        if (stored == null) {
+            return defValues;
+        }
+        if (!(stored instanceof String) && !(stored instanceof Set)) {
+            throw new ClassCastException(key + " is not a Set<String>");
+        }
+        final Set<String> values = mStringSetCodec.decode(key,
+                stored instanceof String ? decompress((String) stored) : stored);
+        return values != null ? Collections.unmodifiableSet(values) : defValues;
+    }
+
+    public int getInt(String key, int defValue) throws ClassCastException {
+        final Integer value = (Integer) mValues.get(key);
+        return value != null ? value : defValue;
+    }
+
+    public long getLong(String key, long defValue) throws ClassCastException {
+        final Long value = (Long) mValues.get(key);
+        return value != null ? value : defValue;
+    }
+
+    public float getFloat(String key, float defValue) throws ClassCastException {
+        final Float value = (Float) mValues.get(key);
+        return value != null ? value : defValue;
+    }
+
+    public boolean getBoolean(String key, boolean defValue) throws ClassCastException {
+        final Boolean value = (Boolean) mValues.get(key);
+        return value != null ? value : defValue;
+    }
+
+    public String get(PrefKey.StringKey key) throws ClassCastException {
+        return getString(key.name, key.defValue);
+    }
+
+    public Set<String> get(PrefKey.StringSetKey key) throws ClassCastException {
+        return getStringSet(key.name, key.defValue);
+    }
+
+    public int get(PrefKey.IntKey key) throws ClassCastException {
+        return getInt(key.name, key.defValue);
+    }
+
+    public long get(PrefKey.LongKey key) throws ClassCastException {
+        return getLong(key.name, key.defValue);
+    }
+
+    public float get(PrefKey.FloatKey key) throws ClassCastException {
+        return getFloat(key.name, key.defValue);
+    }
+
+    public boolean get(PrefKey.BooleanKey key) throws ClassCastException {
+        return getBoolean(key.name, key.defValue);
+    }
+
+    private static String decompress(String stored) {
+        if (!StringCompressor.isCompressed(stored)) {
+            return stored;
+        }
+        try {
+            return StringCompressor.decompress(stored);
+        } catch (final IllegalArgumentException e) {
+            return stored;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PreferenceSnapshot" + mValues;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Storage backend of {@link SimpleSharedPreferences}.<br>
+ * Built-in backends are in {@link PreferenceStores}, custom ones can extend {@link AbstractPreferences}.
+ *
+ * @see SimpleSharedPreferences#initialize(android.app.Application, PreferenceStore)
+ * @see SimpleSharedPreferences#named(String, PreferenceStore)
+ */
+public interface PreferenceStore {
+
+    /**
+     * Opens the preferences of <b>name</b>. Must return the same instance every time for the same name.
+     *
+     * @param context Application's context.
+     * @param name    name of the preferences, null for the default preferences of the app.
+     */
+    SharedPreferences open(Context context, String name);
+}
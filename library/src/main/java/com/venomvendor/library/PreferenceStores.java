@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Built-in {@link PreferenceStore}s.
+ * <ul>
+ * <li>{@link #XML} platform {@link SharedPreferences}, rewrites the whole XML file on every write. Default.</li>
+ * <li>{@link #appendLog()} appends every change to a binary log, compacted from time to time.</li>
+ * <li>{@link #mapped()} memory-mapped file, reads decode only the requested entry.</li>
+ * <li>{@link #multiProcess()} append-only log shared by processes, see changes of other processes.</li>
+ * </ul>
+ */
+public final class PreferenceStores {
+
+    /**
+     * Platform {@link SharedPreferences}, stored as XML.
+     */
+    public static final PreferenceStore XML = new PreferenceStore() {
+        @Override
+        public SharedPreferences open(Context context, String name) {
+            if (name == null) {
+                return PreferenceManager.getDefaultSharedPreferences(context);
+            }
+            return context.getSharedPreferences(name, Context.MODE_PRIVATE);
+        }
+    };
+
+    private PreferenceStores() {
+    }
+
+    /**
+     * Append-only log, a write costs only the size of the changed entries.
+     * The log is compacted once it has more stale records than live entries, and at least 256.
+     */
+    public static PreferenceStore appendLog() {
+        return new LogPreferenceStore(LogPreferences.DEFAULT_MIN_GARBAGE);
+    }
+
+    /**
+     * @param minGarbageRecords minimum number of stale records before the log is compacted.
+     * @see #appendLog()
+     */
+    public static PreferenceStore appendLog(int minGarbageRecords) {
+        if (minGarbageRecords < 0) {
+            throw new IllegalArgumentException("minGarbageRecords cannot be negative");
+        }
+        return new LogPreferenceStore(minGarbageRecords);
+    }
+
+    /**
+     * Memory-mapped file with a hash index, for stores with thousands of keys.<br>
+     * Nothing is parsed on open & values are not kept on the heap, a read decodes only the requested entry.
+     * Writes update the entry in place, the file is synced on the disk thread.
+     */
+    public static PreferenceStore mapped() {
+        return new MappedPreferenceStore();
+    }
+
+    /**
+     * Append-only log which can be read & written by several processes of the app.<br>
+     * Writes hold a file lock. A read checks a memory-mapped version number, & replays only the records
+     * appended by other processes since the last read. Listeners are notified of these changes on the next
+     * read or write of this process.
+     * {@link SimpleSharedPreferences#increment(String, long)} writes at once, summing under the file lock.
+     */
+    public static PreferenceStore multiProcess() {
+        return new MultiProcessPreferenceStore();
+    }
+
+    /**
+     * @return The file name used for the default preferences, same as the platform.
+     */
+    static String defaultName(Context context) {
+        return context.getPackageName() + "_preferences";
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+/**
+ * Map of String keys to int, long, float & boolean values, without boxing.<br>
+ * Open addressing with linear probing over parallel arrays, values are stored as raw long bits.
+ * Lookups & updates of existing keys do not allocate. Not thread safe.
+ */
+final class PrimitiveIndex {
+
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte FLOAT = 3;
+    static final byte BOOLEAN = 4;
+
+    private String[] mKeys;
+    private long[] mBits;
+    private byte[] mTypes;
+    private int mSize;
+
+    PrimitiveIndex(int expectedSize) {
+        int capacity = 8;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @return Slot of the key, -1 if absent. Valid till the next update.
+     */
+    int indexOf(String key) {
+        final String[] keys = mKeys;
+        final int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            final String current = keys[slot];
+            if (current == null) {
+                return -1;
+            }
+            if (current == key || current.equals(key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * @return Slot of the key if it holds a value of <b>type</b>, else -1.
+     */
+    int find(String key, byte type) {
+        final int slot = indexOf(key);
+        return slot >= 0 && mTypes[slot] == type ? slot : -1;
+    }
+
+    String keyAt(int slot) {
+        return mKeys[slot];
+    }
+
+    byte typeAt(int slot) {
+        return mTypes[slot];
+    }
+
+    long bitsAt(int slot) {
+        return mBits[slot];
+    }
+
+    /**
+     * @return The value at the slot, boxed.
+     */
+    Object boxAt(int slot) {
+        final long bits = mBits[slot];
+        switch (mTypes[slot]) {
+            case INT:
+                return (int) bits;
+            case LONG:
+                return bits;
+            case FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            default:
+                return bits != 0;
+        }
+    }
+
+    void put(String key, byte type, long bits) {
+        int slot = indexOf(key);
+        if (slot < 0) {
+            if ((mSize + 1) * 2 > mKeys.length) {
+                rehash(mKeys.length << 1);
+            }
+            slot = hash(key) & (mKeys.length - 1);
+            while (mKeys[slot] != null) {
+                slot = (slot + 1) & (mKeys.length - 1);
+            }
+            mKeys[slot] = key;
+            mSize++;
+        }
+        mTypes[slot] = type;
+        mBits[slot] = bits;
+    }
+
+    /**
+     * @return true if the key was present.
+     */
+    boolean remove(String key) {
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return false;
+        }
+        // Shift back the following entries of the cluster, no tombstones needed.
+        final int mask = mKeys.length - 1;
+        for (int next = (slot + 1) & mask; mKeys[next] != null; next = (next + 1) & mask) {
+            final int home = hash(mKeys[next]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                mKeys[slot] = mKeys[next];
+                mTypes[slot] = mTypes[next];
+                mBits[slot] = mBits[next];
+                slot = next;
+            }
+        }
+        mKeys[slot] = null;
+        mSize--;
+        return true;
+    }
+
+    void clear() {
+        if (mSize == 0) {
+            return;
+        }
+        for (int slot = 0; slot < mKeys.length; slot++) {
+            mKeys[slot] = null;
+        }
+        mSize = 0;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return Number of slots, iterate with {@link #keyAt(int)}, null if the slot is empty.
+     */
+    int capacity() {
+        return mKeys.length;
+    }
+
+    static long bits(float value) {
+        return Float.floatToRawIntBits(value);
+    }
+
+    static long bits(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    private void rehash(int capacity) {
+        final String[] keys = mKeys;
+        final byte[] types = mTypes;
+        final long[] bits = mBits;
+        allocate(capacity);
+        final int mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                int slot = hash(keys[i]) & mask;
+                while (mKeys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                mKeys[slot] = keys[i];
+                mTypes[slot] = types[i];
+                mBits[slot] = bits[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new String[capacity];
+        mTypes = new byte[capacity];
+        mBits = new long[capacity];
+    }
+
+    private static int hash(String key) {
+        final int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -24,18 +24,35 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.os.Build;
-import android.preference.PreferenceManager;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.venomvendor.library.PreferenceMetrics.Operation;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Modified version of {@link SharedPreferences}.<br>
@@ -68,328 +85,3352 @@ import java.util.Set;
 public class SimpleSharedPreferences implements SharedPreferences, Editor {
 
     private static final String TAG = SimpleSharedPreferences.class.getSimpleName();
-    private static SimpleSharedPreferences mInstance;
-    private static SharedPreferences mSharedPreferences;
-    private static Editor mEditor;
-    private static boolean mEnableLog;
+    private static final String TYPE_STRING = "String";
+    private static final String TYPE_STRING_SET = "Set<String>";
+    private static final String TYPE_INT = "int";
+    private static final String TYPE_LONG = "long";
+    private static final String TYPE_FLOAT = "float";
+    private static final String TYPE_BOOLEAN = "boolean";
+    private static final String TYPE_BYTES = "byte[]";
+    /**
+     * Maximum number of expired keys removed by a single write.
+     */
+    private static final int SWEEP_BATCH = 64;
+    private static final char PROFILE_STRING = 'S';
+    private static final char PROFILE_STRING_SET = 'T';
+    private static final char PROFILE_INT = 'I';
+    private static final char PROFILE_LONG = 'L';
+    private static final char PROFILE_FLOAT = 'F';
+    private static final char PROFILE_BOOLEAN = 'B';
+    /**
+     * Maximum number of keys in the startup profile.
+     */
+    private static final int MAX_PROFILE_KEYS = 256;
+    /**
+     * Starts the value of a key stored in {@link BlobStore}, followed by the generation of the blob.
+     */
+    private static final String BLOB_PREFIX = "~ssp:blob:";
+    private static final AtomicLong mBlobGeneration = new AtomicLong(System.currentTimeMillis() << 10);
+    /**
+     * Marks a key removed in {@link #mPendingWrites}.
+     */
+    private static final Object REMOVED = new Object();
+    /**
+     * Returned by {@link #getPending(String)} when there is no pending change for a key.
+     */
+    private static final Object NOT_PENDING = new Object();
+    private static final Map<String, SimpleSharedPreferences> mNamedInstances =
+            new HashMap<String, SimpleSharedPreferences>();
+    private static volatile SimpleSharedPreferences mInstance;
+    private static Application mContext;
+    private static PreferenceStore mStore;
+    private static volatile boolean mEnableLog;
+    private static ScheduledExecutorService mFlushScheduler;
+    private static ExecutorService mReadExecutor;
+
+    private volatile SharedPreferences mSharedPreferences;
+    private PreferenceStore mOpenedStore;
+    private volatile CountDownLatch mLoadLatch;
+    /**
+     * Reads waiting for {@link #initializeAsync(Application)}, guarded by itself.
+     */
+    private final List<Runnable> mWhenReady = new ArrayList<Runnable>();
+    private volatile Throwable mLoadError;
+    private volatile long mLoadTimeNanos = -1;
+    private final AtomicLong mBlockedNanos = new AtomicLong();
+    private final long mCreatedNanos = System.nanoTime();
+    /**
+     * Keys & types read during the startup window, in order, guarded by itself.
+     */
+    private final Map<String, Character> mStartupReads = new LinkedHashMap<String, Character>();
+    private volatile boolean mRecordingStartup;
+    private long mStartupEndNanos;
+    /**
+     * Keys of the saved profile, added once prefetched.
+     */
+    private final Map<String, Boolean> mPrefetched = new ConcurrentHashMap<String, Boolean>();
+    /**
+     * Set by the prefetch once the store loaded the file, primitives are not cached so their reads are warm from then.
+     */
+    private volatile boolean mPrefetchLoaded;
+    private final AtomicLong mWarmReads = new AtomicLong();
+    private final AtomicLong mColdReads = new AtomicLong();
+    /**
+     * Batch of the calling thread, so that writes from other threads never join it.
+     */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+    private final AtomicLong mSavedWriteCount = new AtomicLong();
+    private volatile boolean mSkipUnchangedWrites;
+    private final AtomicLong mSuppressedWriteCount = new AtomicLong();
+
+    private final Object mPendingLock = new Object();
+    private Map<String, Object> mPendingWrites = new LinkedHashMap<String, Object>();
+    private boolean mPendingClear;
+    /**
+     * Changes of the flush being saved, swapped with the pending ones by {@link #flushNow()}.
+     * Read till the backend has them, guarded by {@link #mPendingLock}.
+     */
+    private Map<String, Object> mFlushingWrites = new LinkedHashMap<String, Object>();
+    private PrimitiveIndex mFlushingPrimitives = new PrimitiveIndex(16);
+    private boolean mFlushingClear;
+    private boolean mFlushing;
+    private int mPendingMutations;
+    private volatile boolean mWriteBehind;
+    private long mFlushWindowMillis;
+    private int mMaxPendingWrites;
+    private ScheduledFuture<?> mScheduledFlush;
+    private volatile StringSetCodec mStringSetCodec = StringSetCodecs.platformDefault();
+    private final StringSetCache mStringSetCache = new StringSetCache(64);
+    private final ListenerRegistry mListeners = new ListenerRegistry();
+    private volatile PreferenceMetrics mMetrics;
+    private volatile int mCompressionThreshold = Integer.MAX_VALUE;
+    private final StringCompressor mCompressor = new StringCompressor(32);
+    private volatile File mBlobDirectory;
+    private BlobStore mBlobs;
+    private long mBlobCacheBytes = 1024 * 1024;
+    /**
+     * Pending int, long, float & boolean changes of write-behind, guarded by {@link #mPendingLock}.
+     * A key is either here or in {@link #mPendingWrites}.
+     */
+    private PrimitiveIndex mPendingPrimitives = new PrimitiveIndex(16);
+    /**
+     * Counters of {@link #increment(String, long)}, added & removed while holding {@link #mPendingLock}.
+     */
+    private final Map<String, Counter> mCounters = new ConcurrentHashMap<String, Counter>();
+    private final AtomicBoolean mCounterFlushScheduled = new AtomicBoolean();
+    private volatile long mCounterFlushMillis = 1000;
+    private final Runnable mCounterFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushCounters();
+        }
+    };
+    /**
+     * Expiry time in milliseconds of the keys written with a ttl, persisted in {@link KEYS#EXPIRIES}.
+     * Changed while holding {@link #mPendingLock}, so that the index is written in order.
+     */
+    private final Map<String, Long> mExpiries = new ConcurrentHashMap<String, Long>();
+    private volatile boolean mExpiriesLoaded;
+    /**
+     * Keys whose expiry changed since the expiries were last written, guarded by {@link #mPendingLock}.
+     */
+    private final Set<String> mChangedExpiries = new HashSet<String>();
+    /**
+     * Set if the expiries are stored per key, in {@link KEYS#EXPIRY_PREFIX} keys of a multi-process store.
+     */
+    private volatile MultiProcessPreferences mSharedExpiries;
+    private volatile long mExpiriesVersion = -1;
+    private ScheduledFuture<?> mScheduledSweep;
+    private long mSweepAt;
+    private final Runnable mSweep = new Runnable() {
+        @Override
+        public void run() {
+            sweepExpired();
+        }
+    };
+    /**
+     * Held strongly, {@link SharedPreferences} keeps only a weak reference of it's listeners.
+     */
+    private final OnSharedPreferenceChangeListener mInternalListener = new OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            if (key == null) {
+                mStringSetCache.clear();
+            } else {
+                mStringSetCache.invalidate(key);
+            }
+            if (!mListeners.isEmpty()) {
+                dispatch(key);
+            }
+        }
+    };
 
     private SimpleSharedPreferences() {
     }
 
     /**
-     * @param context Application's context.
-     *                {@link Context} context
+     * @param context Application's context.
+     *                {@link Context} context
+     */
+    public static SimpleSharedPreferences initialize(Application context) {
+        return initialize(context, PreferenceStores.XML);
+    }
+
+    /**
+     * Same as {@link #initialize(Application)}, with a different storage backend.
+     * <p/>
+     * <pre>
+     * SimpleSharedPreferences.initialize(this, PreferenceStores.appendLog());
+     * </pre>
+     *
+     * @param context Application's context.
+     * @param store   backend of the default & {@link #named(String)} preferences.
+     * @see PreferenceStores
+     */
+    public static synchronized SimpleSharedPreferences initialize(Application context, PreferenceStore store) {
+        initArgsCheck(context, store);
+        final SimpleSharedPreferences instance = new SimpleSharedPreferences();
+        instance.load(context);
+        mInstance = instance;
+        instance.incrementAppOpenedCount();
+        return instance;
+    }
+
+    /**
+     * Same as {@link #initialize(Application)}, without reading the disk on the calling thread.<br>
+     * Preferences are loaded in background, {@link #getInstance()} returns immediately
+     * & reads/writes wait till the load is complete. App opened count is incremented after the load.
+     *
+     * @param context Application's context.
+     *                {@link Context} context
+     * @see #awaitReady(long, TimeUnit)
+     */
+    public static SimpleSharedPreferences initializeAsync(Application context) {
+        return initializeAsync(context, PreferenceStores.XML);
+    }
+
+    /**
+     * Same as {@link #initializeAsync(Application)}, with a different storage backend.
+     *
+     * @param context Application's context.
+     * @param store   backend of the default & {@link #named(String)} preferences.
+     * @see #initialize(Application, PreferenceStore)
+     */
+    public static synchronized SimpleSharedPreferences initializeAsync(final Application context,
+                                                                       PreferenceStore store) {
+        initArgsCheck(context, store);
+        final SimpleSharedPreferences instance = new SimpleSharedPreferences();
+        instance.mLoadLatch = new CountDownLatch(1);
+        mInstance = instance;
+        final Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    instance.load(context);
+                    instance.incrementAppOpenedCount();
+                } catch (final Throwable throwable) {
+                    instance.mLoadError = throwable;
+                } finally {
+                    instance.ready();
+                }
+            }
+        }, TAG + "-load");
+        loader.setPriority(Thread.NORM_PRIORITY - 1);
+        loader.start();
+        return instance;
+    }
+
+    /**
+     * Preferences stored in a separate file, instead of the default one.<br>
+     * Keep frequently changing keys in a small file, so that each write does not rewrite unrelated keys.
+     * <p/>
+     * <pre>
+     * SimpleSharedPreferences session = SimpleSharedPreferences.named("session");
+     * session.putLong("last_seen", System.currentTimeMillis());
+     * </pre>
+     * Must be called after {@link #initialize(Application)}. Uses the backend passed while initializing.
+     *
+     * @param name name of the preferences file.
+     * @return The same instance for the same name.
+     * @see Context#getSharedPreferences(String, int)
+     */
+    public static SimpleSharedPreferences named(String name) {
+        initCheck();
+        return named(name, mStore);
+    }
+
+    /**
+     * Same as {@link #named(String)}, stored in the given backend.
+     *
+     * @param name  name of the preferences file.
+     * @param store backend of the preferences.
+     * @return The same instance for the same name.
+     * @throws IllegalStateException if the name is already opened with a different backend.
+     */
+    public static SimpleSharedPreferences named(String name, PreferenceStore store) {
+        if (name == null) {
+            throw new NullPointerException("Name cannot be null");
+        }
+        if (store == null) {
+            throw new NullPointerException("PreferenceStore cannot be null");
+        }
+        initCheck();
+        synchronized (mNamedInstances) {
+            SimpleSharedPreferences instance = mNamedInstances.get(name);
+            if (instance == null) {
+                instance = wrap(store.open(mContext, name));
+                instance.mOpenedStore = store;
+                instance.mBlobDirectory = BlobStore.directory(mContext, name);
+                mNamedInstances.put(name, instance);
+            } else if (!instance.mOpenedStore.equals(store)) {
+                throw new IllegalStateException("Preferences '" + name + "' already opened with a different store");
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Wraps any {@link SharedPreferences}, e.g. a custom implementation or one from a library.
+     * The instance is not cached & does not need {@link #initialize(Application)}.
+     *
+     * @param preferences preferences to be wrapped.
+     */
+    public static SimpleSharedPreferences wrap(SharedPreferences preferences) {
+        if (preferences == null) {
+            throw new NullPointerException("SharedPreferences cannot be null");
+        }
+        final SimpleSharedPreferences instance = new SimpleSharedPreferences();
+        instance.mSharedPreferences = preferences;
+        preferences.registerOnSharedPreferenceChangeListener(instance.mInternalListener);
+        return instance;
+    }
+
+    private static void initArgsCheck(Application context, PreferenceStore store) {
+        if (context == null) {
+            throw new NullPointerException("Context cannot be null");
+        }
+        if (store == null) {
+            throw new NullPointerException("PreferenceStore cannot be null");
+        }
+        if (mInstance != null) {
+            throw new ExceptionInInitializerError("SimpleSharedPreferences already initialized.");
+        }
+        mContext = context;
+        mStore = store;
+    }
+
+    /**
+     * Opens & reads the default preferences.
+     */
+    private void load(Context context) {
+        final long start = System.nanoTime();
+        final SharedPreferences preferences = mStore.open(context, null);
+        preferences.contains(KEYS.OPENED_TIMES_COUNT); // Waits till loaded.
+        mLoadTimeNanos = System.nanoTime() - start;
+        preferences.registerOnSharedPreferenceChangeListener(mInternalListener);
+        mBlobDirectory = BlobStore.directory(context, PreferenceStores.defaultName(context));
+        mSharedPreferences = preferences;
+    }
+
+    /**
+     * Releases the waiting reads, runs the ones queued by {@link #whenReady(Runnable)}.
+     */
+    private void ready() {
+        final List<Runnable> tasks;
+        synchronized (mWhenReady) {
+            mLoadLatch.countDown();
+            tasks = new ArrayList<Runnable>(mWhenReady);
+            mWhenReady.clear();
+        }
+        for (final Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    /**
+     * Runs the task in background, on the loading thread once loaded if {@link #initializeAsync(Application)}
+     * is loading. Never on the calling thread, stores may read the file or wait for a file lock.
+     */
+    private void whenReady(Runnable task) {
+        synchronized (mWhenReady) {
+            final CountDownLatch latch = mLoadLatch;
+            if (latch != null && latch.getCount() > 0) {
+                mWhenReady.add(task);
+                return;
+            }
+        }
+        getReadExecutor().execute(task);
+    }
+
+    private static synchronized ExecutorService getReadExecutor() {
+        if (mReadExecutor == null) {
+            mReadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, TAG + "-read");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mReadExecutor;
+    }
+
+    private void awaitLoad() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mLoadLatch.await();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (mLoadError != null) {
+            throw new IllegalStateException("SimpleSharedPreferences failed to load", mLoadError);
+        }
+    }
+
+    /**
+     * Waits till the preferences are loaded by {@link #initializeAsync(Application)}.
+     *
+     * @return true if loaded, false if the timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if the preferences failed to load, caused by the load error.
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        if (mSharedPreferences != null) {
+            return true;
+        }
+        if (!mLoadLatch.await(timeout, unit)) {
+            return false;
+        }
+        if (mLoadError != null) {
+            throw new IllegalStateException("SimpleSharedPreferences failed to load", mLoadError);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the preferences are loaded & can be read without blocking.
+     */
+    public boolean isReady() {
+        return mSharedPreferences != null;
+    }
+
+    /**
+     * @return Time in milliseconds taken to load the preferences from disk, -1 if still loading.
+     */
+    public long getLoadTimeMillis() {
+        final long loadTimeNanos = mLoadTimeNanos;
+        return loadTimeNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(loadTimeNanos);
+    }
+
+    /**
+     * @return Total time in milliseconds reads/writes were blocked, waiting for {@link #initializeAsync(Application)}.
+     */
+    public long getBlockedTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mBlockedNanos.get());
+    }
+
+    /**
+     * Records the keys read during the first <b>windowMillis</b> after {@link #initialize(Application)},
+     * & saves them at the end of the window. Keys saved by the previous launch are read in background
+     * right away, so that decoded values are cached & the file is read before they are needed.<br>
+     * Call right after initializing, see {@link #getStartupWarmReadCount()}.
+     * <p/>
+     * <pre>
+     * SimpleSharedPreferences.initializeAsync(this).enableStartupProfile(1000);
+     * </pre>
+     *
+     * @param windowMillis duration of the startup, from initialization.
+     */
+    public SimpleSharedPreferences enableStartupProfile(long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis should be positive");
+        }
+        final long remainingNanos = mCreatedNanos + TimeUnit.MILLISECONDS.toNanos(windowMillis) - System.nanoTime();
+        if (remainingNanos <= 0) {
+            return this;
+        }
+        synchronized (mStartupReads) {
+            if (mRecordingStartup) {
+                return this;
+            }
+            mStartupEndNanos = mCreatedNanos + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+            mRecordingStartup = true;
+        }
+        final Thread prefetch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        }, TAG + "-prefetch");
+        prefetch.setPriority(Thread.NORM_PRIORITY - 1);
+        prefetch.start();
+        getFlushScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                saveStartupProfile();
+            }
+        }, remainingNanos, TimeUnit.NANOSECONDS);
+        return this;
+    }
+
+    /**
+     * @return Number of reads during the startup window whose decoded value was already prefetched,
+     * or of a primitive once the file was loaded.
+     */
+    public long getStartupWarmReadCount() {
+        return mWarmReads.get();
+    }
+
+    /**
+     * @return Number of the other reads during the startup window, see {@link #getStartupWarmReadCount()}.
+     */
+    public long getStartupColdReadCount() {
+        return mColdReads.get();
+    }
+
+    private void recordStartupRead(String key, char type) {
+        if (System.nanoTime() - mStartupEndNanos >= 0) {
+            return;
+        }
+        final boolean warm = mPrefetched.containsKey(key)
+                || mPrefetchLoaded && type != PROFILE_STRING && type != PROFILE_STRING_SET;
+        (warm ? mWarmReads : mColdReads).incrementAndGet();
+        synchronized (mStartupReads) {
+            if (mStartupReads.size() < MAX_PROFILE_KEYS && !mStartupReads.containsKey(key)) {
+                mStartupReads.put(key, type);
+            }
+        }
+    }
+
+    /**
+     * Reads the String & String set keys of the saved profile, which caches their decoded values.
+     */
+    private void prefetch() {
+        final String profile;
+        try {
+            profile = readString(KEYS.STARTUP_PROFILE, null);
+        } catch (final RuntimeException e) {
+            Log.w(TAG, "Startup profile not read", e);
+            return;
+        }
+        mPrefetchLoaded = true;
+        int position = 0;
+        while (profile != null && position < profile.length()) {
+            final char type = profile.charAt(position);
+            final int lengthEnd = profile.indexOf(':', position + 1);
+            final String key;
+            try {
+                final int end = lengthEnd + 1 + Integer.parseInt(profile.substring(position + 1, lengthEnd));
+                key = profile.substring(lengthEnd + 1, end);
+                position = end;
+            } catch (final RuntimeException e) {
+                Log.w(TAG, "Invalid startup profile at " + position, e);
+                return;
+            }
+            if (type != PROFILE_STRING && type != PROFILE_STRING_SET) {
+                // Nothing to cache, read from memory once the file is loaded.
+                continue;
+            }
+            try {
+                if (type == PROFILE_STRING) {
+                    readString(key, null);
+                } else {
+                    readStringSet(key, null);
+                }
+            } catch (final ClassCastException e) {
+                // Type changed since the profile was saved, read cold.
+            }
+            mPrefetched.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Saves the keys read during the startup window, as <code>&lt;type&gt;&lt;key length&gt;:&lt;key&gt;</code>.
+     */
+    private void saveStartupProfile() {
+        final StringBuilder builder = new StringBuilder();
+        synchronized (mStartupReads) {
+            mRecordingStartup = false;
+            for (final Map.Entry<String, Character> entry : mStartupReads.entrySet()) {
+                builder.append(entry.getValue()).append(entry.getKey().length()).append(':').append(entry.getKey());
+            }
+            mStartupReads.clear();
+        }
+        final String profile = builder.toString();
+        if (profile.length() == 0 || profile.equals(getStringSafe(KEYS.STARTUP_PROFILE, null))) {
+            return;
+        }
+        putString(KEYS.STARTUP_PROFILE, profile);
+    }
+
+    /**
+     * Initiates SharedPreferences.
+     */
+    public static SimpleSharedPreferences getInstance() {
+        initCheck();
+        return mInstance;
+    }
+
+    /**
+     * Check if PreferenceManager is Initialized.
+     */
+    private static void initCheck() {
+        if (mInstance == null) {
+            throw new InstantiationError("SimpleSharedPreferences not initialized.\n"
+                    + "Initialize by calling 'SimpleSharedPreferences.initialize(this)' "
+                    + "from `MyApplication extends Application`\n\n"
+                    + "public class MyApplication extends Application {\n" +
+                    "    @Override\n" +
+                    "    public void onCreate() {\n" +
+                    "        super.onCreate();\n" +
+                    "        SimpleSharedPreferences.initialize(this);\n" +
+                    "        ...\n" +
+                    "        ...\n" +
+                    "    }\n" +
+                    "}");
+        }
+    }
+
+    /**
+     * @return The loaded {@link SharedPreferences}, waits if {@link #initializeAsync(Application)} is loading it.
+     */
+    private SharedPreferences getPreferences() {
+        final SharedPreferences preferences = mSharedPreferences;
+        if (preferences != null) {
+            return preferences;
+        }
+        final long start = System.nanoTime();
+        awaitLoad();
+        mBlockedNanos.addAndGet(System.nanoTime() - start);
+        return mSharedPreferences;
+    }
+
+    /**
+     * @return The {@link Editor} of the current batch, or a new one.
+     * Pass it to {@link #endWrite(Editor, String)} after the change.
+     */
+    @SuppressLint("CommitPrefEdits")
+    private Editor beginWrite() {
+        final Batch batch = mBatch.get();
+        if (batch != null) {
+            return batch.editor;
+        }
+        return getPreferences().edit();
+    }
+
+    /**
+     * Writes the change in the {@link Editor}, or defers it till the end of the current batch.
+     *
+     * @param key changed key, null if cleared.
+     */
+    private void endWrite(Editor editor, String key) {
+        dropCounter(key);
+        final boolean expiryDropped = dropExpiry(key);
+        final Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.writes++;
+            batch.expiries |= expiryDropped;
+            return;
+        }
+        if (expiryDropped) {
+            synchronized (mPendingLock) {
+                putExpiries(editor);
+                save(editor);
+            }
+        } else {
+            save(editor);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private boolean save(Editor editor) {
+        final boolean apply = Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD;
+        final PreferenceMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onDiskWrite(!apply);
+        }
+        if (apply) {
+            editor.apply();
+            return true;
+        }
+        return editor.commit();
+    }
+
+    /**
+     * @return Start time for {@link #endTiming(Operation, long)}, 0 if metrics are disabled.
+     */
+    private long startTiming() {
+        return mMetrics == null ? 0 : System.nanoTime();
+    }
+
+    private void endTiming(Operation operation, long start) {
+        final PreferenceMetrics metrics = mMetrics;
+        if (metrics != null && start != 0) {
+            metrics.onOperation(operation, System.nanoTime() - start);
+        }
+    }
+
+    private void recordTypeMismatch(String key, String expectedType) {
+        final PreferenceMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onTypeMismatch(key, expectedType);
+        }
+    }
+
+    /**
+     * Records the cost of every operation, see {@link HistogramMetrics}. Metrics are disabled by default,
+     * disabled metrics cost a single null check per operation.
+     *
+     * @param metrics receives the costs, null to disable.
+     */
+    public SimpleSharedPreferences setMetrics(PreferenceMetrics metrics) {
+        mMetrics = metrics;
+        return this;
+    }
+
+    public PreferenceMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @return the status of Log
+     */
+    public boolean isLogEnabled() {
+        return mEnableLog;
+    }
+
+    /**
+     * Enables/Disables printing LogValues.
+     *
+     * @param enableLog true is log should be enabled.
+     */
+    public void enableLog(boolean enableLog) {
+        mEnableLog = enableLog;
+    }
+
+    /**
+     * @return The {@link StringSetCodec} used by {@link #putStringSet(String, Set)}.
+     */
+    public StringSetCodec getStringSetCodec() {
+        return mStringSetCodec;
+    }
+
+    /**
+     * Changes the format used by {@link #putStringSet(String, Set)}.
+     * Values written in any other built-in format are still read by {@link #getStringSet(String, Set)}.
+     *
+     * @param codec one of {@link StringSetCodecs} or a custom {@link StringSetCodec}.
+     */
+    public SimpleSharedPreferences setStringSetCodec(StringSetCodec codec) {
+        if (codec == null) {
+            throw new NullPointerException("StringSetCodec cannot be null");
+        }
+        mStringSetCodec = codec;
+        return this;
+    }
+
+    /**
+     * Limits the number of decoded String sets kept in memory by {@link #getStringSet(String, Set)}.
+     *
+     * @param maxSize number of sets to cache, 0 disables the cache. Default is 64.
+     */
+    public SimpleSharedPreferences setStringSetCacheSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize cannot be negative");
+        }
+        mStringSetCache.setMaxSize(maxSize);
+        return this;
+    }
+
+    /**
+     * Increment's App opened count by <b>1</b>
+     */
+    private void incrementAppOpenedCount() {
+        final int appOpenedCount = increment(KEYS.OPENED_TIMES_COUNT_KEY, 1);
+        // Changes once per launch, written now so that a crash right after the launch still counts it.
+        flushCounters();
+        if (mEnableLog) {
+            Log.d(TAG, "Count before updating " + (appOpenedCount - 1));
+        }
+    }
+
+    /**
+     * @return The number of times the was opened. This will not autoupdate, everytime the app is opened.<br>
+     * You should call {@link #incrementAppOpenedCount()} on {@link Activity#onStart()} to update this.
+     */
+    public int getAppOpenedCount() {
+        return get(KEYS.OPENED_TIMES_COUNT_KEY);
+    }
+
+    /**
+     * Atomically adds <b>delta</b> to the counter, stored as a long.<br>
+     * The value is updated in memory & written lazily, together with all other changed counters,
+     * see {@link #setCounterFlushDelay(long)}. Reads of the key see the new value immediately.
+     * Counters of {@link PreferenceStores#multiProcess()} are written at once, so the increments of all processes add up.
+     * <p/>
+     * <pre>
+     * mPreferences.increment("SCREEN_VIEWS", 1);
+     * </pre>
+     * An existing int value stays an int, use {@link #increment(PrefKey.IntKey, int)} to create one.
+     *
+     * @return The new value.
+     * @throws ClassCastException if the key holds a value other than a long or an int.
+     */
+    public long increment(String key, long delta) throws ClassCastException {
+        return add(key, (byte) 0, delta, true);
+    }
+
+    /**
+     * Same as {@link #increment(String, long)}, but returns the previous value.
+     */
+    public long getAndAdd(String key, long delta) throws ClassCastException {
+        return add(key, (byte) 0, delta, false);
+    }
+
+    /**
+     * @return The new value, wraps around on overflow like an int.
+     * @see #increment(String, long)
+     */
+    public int increment(PrefKey.IntKey key, int delta) throws ClassCastException {
+        return (int) add(key.name, PrimitiveIndex.INT, delta, true);
+    }
+
+    /**
+     * @return The previous value.
+     * @see #increment(String, long)
+     */
+    public int getAndAdd(PrefKey.IntKey key, int delta) throws ClassCastException {
+        return (int) add(key.name, PrimitiveIndex.INT, delta, false);
+    }
+
+    /**
+     * @see #increment(String, long)
+     */
+    public long increment(PrefKey.LongKey key, long delta) throws ClassCastException {
+        return add(key.name, PrimitiveIndex.LONG, delta, true);
+    }
+
+    /**
+     * @return The previous value.
+     * @see #increment(String, long)
+     */
+    public long getAndAdd(PrefKey.LongKey key, long delta) throws ClassCastException {
+        return add(key.name, PrimitiveIndex.LONG, delta, false);
+    }
+
+    /**
+     * Changes how long counters are kept in memory before being written. {@link #flushNow()} writes them at once.
+     *
+     * @param delayMillis time in milliseconds from the first change to the write. Default is 1000.
+     */
+    public SimpleSharedPreferences setCounterFlushDelay(long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("delayMillis cannot be negative");
+        }
+        mCounterFlushMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * @param type {@link PrimitiveIndex#INT} or {@link PrimitiveIndex#LONG}, 0 to keep the stored type.
+     */
+    private long add(String key, byte type, long delta, boolean returnNew) throws ClassCastException {
+        final SharedPreferences preferences = getPreferences();
+        if (!(preferences instanceof MultiProcessPreferences)) {
+            return add(counter(key, type), delta, returnNew);
+        }
+        // A buffered counter would overwrite the increments of the other processes.
+        if (getPending(key) != NOT_PENDING) {
+            flushNow();
+        }
+        try {
+            return ((MultiProcessPreferences) preferences).add(key, type, delta, returnNew);
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, type == PrimitiveIndex.INT ? TYPE_INT : TYPE_LONG, e);
+        }
+    }
+
+    private long add(Counter counter, long delta, boolean returnNew) {
+        final long previous;
+        final long next;
+        if (counter.type == PrimitiveIndex.LONG) {
+            previous = counter.value.getAndAdd(delta);
+            next = previous + delta;
+        } else {
+            while (true) {
+                final long current = counter.value.get();
+                final long updated = (int) (current + delta);
+                if (counter.value.compareAndSet(current, updated)) {
+                    previous = current;
+                    next = updated;
+                    break;
+                }
+            }
+        }
+        counter.dirty = true;
+        if (mCounterFlushScheduled.compareAndSet(false, true)) {
+            getFlushScheduler().schedule(mCounterFlush, mCounterFlushMillis, TimeUnit.MILLISECONDS);
+        }
+        return returnNew ? next : previous;
+    }
+
+    /**
+     * @param type {@link PrimitiveIndex#INT} or {@link PrimitiveIndex#LONG}, 0 to keep the stored type.
+     * @return The counter of the key, loaded from the stored value on first use.
+     */
+    private Counter counter(String key, byte type) throws ClassCastException {
+        Counter counter = mCounters.get(key);
+        if (counter == null) {
+            synchronized (mPendingLock) {
+                counter = mCounters.get(key);
+                if (counter == null) {
+                    counter = loadCounter(key, type);
+                    mCounters.put(key, counter);
+                }
+            }
+        }
+        if (type != 0 && counter.type != type) {
+            throw typeMismatch(key, type == PrimitiveIndex.INT ? TYPE_INT : TYPE_LONG, new ClassCastException());
+        }
+        return counter;
+    }
+
+    private Counter loadCounter(String key, byte type) throws ClassCastException {
+        if (type == PrimitiveIndex.INT) {
+            try {
+                return new Counter(PrimitiveIndex.INT, readInt(key, 0));
+            } catch (final ClassCastException e) {
+                throw typeMismatch(key, TYPE_INT, e);
+            }
+        }
+        try {
+            return new Counter(PrimitiveIndex.LONG, readLong(key, 0));
+        } catch (final ClassCastException e) {
+            if (type == PrimitiveIndex.LONG) {
+                throw typeMismatch(key, TYPE_LONG, e);
+            }
+        }
+        try {
+            return new Counter(PrimitiveIndex.INT, readInt(key, 0));
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, TYPE_LONG, e);
+        }
+    }
+
+    /**
+     * Forgets the counter of a key being written, so that the counter never overwrites the new value.
+     *
+     * @param key written key, null if cleared.
+     */
+    private void dropCounter(String key) {
+        if (mCounters.isEmpty() || key != null && !mCounters.containsKey(key)) {
+            return;
+        }
+        synchronized (mPendingLock) {
+            if (key == null) {
+                mCounters.clear();
+            } else {
+                mCounters.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Writes changed counters, or hands them to write-behind when it is enabled.
+     */
+    private void flushCounters() {
+        mCounterFlushScheduled.set(false);
+        final boolean flush;
+        synchronized (mPendingLock) {
+            flush = !mWriteBehind || enqueueCounters();
+        }
+        if (flush) {
+            flushNow();
+        }
+    }
+
+    /**
+     * Hands the changed counters to write-behind. Must hold {@link #mPendingLock}.
+     *
+     * @return true if {@link #flushNow()} is to be called after releasing the lock.
+     */
+    private boolean enqueueCounters() {
+        boolean changed = false;
+        for (final Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+            final Counter counter = entry.getValue();
+            if (counter.dirty) {
+                counter.dirty = false;
+                mPendingWrites.remove(entry.getKey());
+                mPendingPrimitives.put(entry.getKey(), counter.type, counter.value.get());
+                changed = true;
+            }
+        }
+        return changed && pendingChanged();
+    }
+
+    private boolean hasDirtyCounter() {
+        for (final Counter counter : mCounters.values()) {
+            if (counter.dirty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link #putString(String, String)}, the key expires once <b>ttl</b> has elapsed.<br>
+     * Reads treat an expired key as absent, expired keys are removed in background, a few at a time
+     * with a single write. Expiry times are kept in one index, not as a key per value.
+     * A later write without ttl keeps the key till it is removed.
+     *
+     * @param ttl time to live, positive.
+     */
+    public SimpleSharedPreferences putString(String key, String value, long ttl, TimeUnit unit) {
+        if (value == null) {
+            return remove(key);
+        }
+        final long expiresAt = expiresAt(ttl, unit);
+        beginBatch();
+        try {
+            putString(key, value);
+            expireAt(key, expiresAt);
+        } finally {
+            endBatch();
+        }
+        return this;
+    }
+
+    /**
+     * Same as {@link #putStringSet(String, Set)}, expires like {@link #putString(String, String, long, TimeUnit)}.
+     */
+    public SimpleSharedPreferences putStringSet(String key, Set<String> values, long ttl, TimeUnit unit) {
+        if (values == null) {
+            return remove(key);
+        }
+        final long expiresAt = expiresAt(ttl, unit);
+        beginBatch();
+        try {
+            putStringSet(key, values);
+            expireAt(key, expiresAt);
+        } finally {
+            endBatch();
+        }
+        return this;
+    }
+
+    /**
+     * Same as {@link #putInt(String, int)}, expires like {@link #putString(String, String, long, TimeUnit)}.
+     */
+    public SimpleSharedPreferences putInt(String key, int value, long ttl, TimeUnit unit) {
+        final long expiresAt = expiresAt(ttl, unit);
+        beginBatch();
+        try {
+            putInt(key, value);
+            expireAt(key, expiresAt);
+        } finally {
+            endBatch();
+        }
+        return this;
+    }
+
+    /**
+     * Same as {@link #putLong(String, long)}, expires like {@link #putString(String, String, long, TimeUnit)}.
+     */
+    public SimpleSharedPreferences putLong(String key, long value, long ttl, TimeUnit unit) {
+        final long expiresAt = expiresAt(ttl, unit);
+        beginBatch();
+        try {
+            putLong(key, value);
+            expireAt(key, expiresAt);
+        } finally {
+            endBatch();
+        }
+        return this;
+    }
+
+    /**
+     * Same as {@link #putFloat(String, float)}, expires like {@link #putString(String, String, long, TimeUnit)}.
+     */
+    public SimpleSharedPreferences putFloat(String key, float value, long ttl, TimeUnit unit) {
+        final long expiresAt = expiresAt(ttl, unit);
+        beginBatch();
+        try {
+            putFloat(key, value);
+            expireAt(key, expiresAt);
+        } finally {
+            endBatch();
+        }
+        return this;
+    }
+
+    /**
+     * Same as {@link #putBoolean(String, boolean)}, expires like {@link #putString(String, String, long, TimeUnit)}.
+     */
+    public SimpleSharedPreferences putBoolean(String key, boolean value, long ttl, TimeUnit unit) {
+        final long expiresAt = expiresAt(ttl, unit);
+        beginBatch();
+        try {
+            putBoolean(key, value);
+            expireAt(key, expiresAt);
+        } finally {
+            endBatch();
+        }
+        return this;
+    }
+
+    private static long expiresAt(long ttl, TimeUnit unit) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl should be positive");
+        }
+        return System.currentTimeMillis() + unit.toMillis(ttl);
+    }
+
+    /**
+     * Adds the key to the index of expiries, written at the end of the current batch or by write-behind.
+     */
+    private void expireAt(String key, long expiresAt) {
+        loadExpiries();
+        final boolean flush;
+        synchronized (mPendingLock) {
+            mExpiries.put(key, expiresAt);
+            mChangedExpiries.add(key);
+            scheduleSweep(expiresAt);
+            if (writesBehind()) {
+                enqueueExpiries();
+                flush = pendingChanged();
+            } else {
+                final Batch batch = mBatch.get();
+                batch.writes++;
+                batch.expiries = true;
+                flush = false;
+            }
+        }
+        if (flush) {
+            flushNow();
+        }
+    }
+
+    /**
+     * @return true if the key was written with a ttl which has elapsed.
+     */
+    private boolean isExpired(String key) {
+        if (!hasExpiries()) {
+            return false;
+        }
+        final Long expiresAt = mExpiries.get(key);
+        return expiresAt != null && expiresAt <= System.currentTimeMillis();
+    }
+
+    private boolean hasExpiries() {
+        loadExpiries();
+        return !mExpiries.isEmpty();
+    }
+
+    private void removeExpired(Map<String, ?> values) {
+        if (!hasExpiries()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (final Map.Entry<String, Long> entry : mExpiries.entrySet()) {
+            if (entry.getValue() <= now) {
+                values.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Removes the expiry of a written key.
+     *
+     * @param key null if cleared.
+     * @return true if the index has to be written, false if unchanged or cleared.
+     */
+    private boolean dropExpiry(String key) {
+        if (!hasExpiries() || key != null && !mExpiries.containsKey(key)) {
+            return false;
+        }
+        synchronized (mPendingLock) {
+            if (key == null) {
+                mExpiries.clear();
+                mChangedExpiries.clear();
+                return false;
+            }
+            mChangedExpiries.add(key);
+            return mExpiries.remove(key) != null;
+        }
+    }
+
+    /**
+     * Same as {@link #dropExpiry(String)}, the index is written by write-behind. Must hold {@link #mPendingLock}.
+     */
+    private void enqueueDroppedExpiry(String key) {
+        if (dropExpiry(key)) {
+            enqueueExpiries();
+        }
+    }
+
+    /**
+     * Hands the changed expiries to write-behind. Must hold {@link #mPendingLock}.
+     */
+    private void enqueueExpiries() {
+        if (mSharedExpiries != null) {
+            for (final String key : mChangedExpiries) {
+                final Long expiresAt = mExpiries.get(key);
+                mPendingWrites.put(KEYS.EXPIRY_PREFIX + key, expiresAt == null ? REMOVED : expiresAt);
+            }
+        } else {
+            mPendingWrites.put(KEYS.EXPIRIES, mExpiries.isEmpty() ? REMOVED : encodeExpiries());
+        }
+        mChangedExpiries.clear();
+    }
+
+    /**
+     * Must hold {@link #mPendingLock}.
+     */
+    private void putExpiries(Editor editor) {
+        if (mSharedExpiries != null) {
+            for (final String key : mChangedExpiries) {
+                final Long expiresAt = mExpiries.get(key);
+                if (expiresAt == null) {
+                    editor.remove(KEYS.EXPIRY_PREFIX + key);
+                } else {
+                    editor.putLong(KEYS.EXPIRY_PREFIX + key, expiresAt);
+                }
+            }
+        } else if (mExpiries.isEmpty()) {
+            editor.remove(KEYS.EXPIRIES);
+        } else {
+            editor.putString(KEYS.EXPIRIES, encodeExpiries());
+        }
+        mChangedExpiries.clear();
+    }
+
+    /**
+     * @return The index as <code>&lt;expiry in base 36&gt;:&lt;key length&gt;:&lt;key&gt;</code> for each key.
+     */
+    private String encodeExpiries() {
+        final StringBuilder builder = new StringBuilder(mExpiries.size() * 32);
+        for (final Map.Entry<String, Long> entry : mExpiries.entrySet()) {
+            builder.append(Long.toString(entry.getValue(), Character.MAX_RADIX)).append(':')
+                    .append(entry.getKey().length()).append(':').append(entry.getKey());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Reads the index written by {@link #encodeExpiries()}, once.
+     * The expiries of a multi-process store are read again after another process wrote.
+     */
+    private void loadExpiries() {
+        if (mExpiriesLoaded) {
+            final MultiProcessPreferences shared = mSharedExpiries;
+            if (shared != null) {
+                loadSharedExpiries(shared);
+            }
+            return;
+        }
+        final SharedPreferences preferences = getPreferences();
+        synchronized (mPendingLock) {
+            if (mExpiriesLoaded) {
+                return;
+            }
+            if (preferences instanceof MultiProcessPreferences) {
+                mSharedExpiries = (MultiProcessPreferences) preferences;
+                loadSharedExpiries(mSharedExpiries);
+                mExpiriesLoaded = true;
+                return;
+            }
+            String index;
+            try {
+                index = preferences.getString(KEYS.EXPIRIES, null);
+            } catch (final ClassCastException e) {
+                index = null;
+            }
+            long next = Long.MAX_VALUE;
+            int position = 0;
+            try {
+                while (index != null && position < index.length()) {
+                    final int timeEnd = index.indexOf(':', position);
+                    final int lengthEnd = index.indexOf(':', timeEnd + 1);
+                    final long expiresAt = Long.parseLong(index.substring(position, timeEnd), Character.MAX_RADIX);
+                    position = lengthEnd + 1 + Integer.parseInt(index.substring(timeEnd + 1, lengthEnd));
+                    mExpiries.put(index.substring(lengthEnd + 1, position), expiresAt);
+                    next = Math.min(next, expiresAt);
+                }
+            } catch (final RuntimeException e) {
+                Log.w(TAG, "Invalid index of expiries at " + position, e);
+            }
+            if (!mExpiries.isEmpty()) {
+                scheduleSweep(next);
+            }
+            mExpiriesLoaded = true;
+        }
+    }
+
+    /**
+     * Reads the expiries stored per key, so that processes never overwrite the expiries of each other.
+     * Changes of this process which are not yet written are kept.
+     */
+    private void loadSharedExpiries(MultiProcessPreferences preferences) {
+        if (preferences.externalVersion() == mExpiriesVersion) {
+            return;
+        }
+        synchronized (mPendingLock) {
+            final long version = preferences.externalVersion();
+            if (version == mExpiriesVersion || mPendingClear || mFlushingClear) {
+                return;
+            }
+            final Map<String, Object> stored = preferences.readPrefix(KEYS.EXPIRY_PREFIX);
+            for (final String key : mExpiries.keySet()) {
+                if (!isExpiryUnwritten(key) && !stored.containsKey(KEYS.EXPIRY_PREFIX + key)) {
+                    mExpiries.remove(key);
+                }
+            }
+            long next = Long.MAX_VALUE;
+            for (final Map.Entry<String, Object> entry : stored.entrySet()) {
+                final String key = entry.getKey().substring(KEYS.EXPIRY_PREFIX.length());
+                if (!isExpiryUnwritten(key) && entry.getValue() instanceof Long) {
+                    final long expiresAt = (Long) entry.getValue();
+                    mExpiries.put(key, expiresAt);
+                    next = Math.min(next, expiresAt);
+                }
+            }
+            if (next != Long.MAX_VALUE) {
+                scheduleSweep(next);
+            }
+            mExpiriesVersion = version;
+        }
+    }
+
+    /**
+     * Must hold {@link #mPendingLock}.
+     */
+    private boolean isExpiryUnwritten(String key) {
+        return mChangedExpiries.contains(key) || mPendingWrites.containsKey(KEYS.EXPIRY_PREFIX + key)
+                || mFlushingWrites.containsKey(KEYS.EXPIRY_PREFIX + key);
+    }
+
+    /**
+     * Schedules {@link #sweepExpired()}, unless it is scheduled earlier. Must hold {@link #mPendingLock}.
+     */
+    private void scheduleSweep(long at) {
+        if (mScheduledSweep != null) {
+            if (mSweepAt <= at) {
+                return;
+            }
+            mScheduledSweep.cancel(false);
+        }
+        mSweepAt = at;
+        mScheduledSweep = getFlushScheduler().schedule(mSweep,
+                Math.max(0, at - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Removes up to {@link #SWEEP_BATCH} expired keys in a single write, then schedules the next sweep.
+     */
+    private void sweepExpired() {
+        // Another process may have written the keys since.
+        loadExpiries();
+        final long now = System.currentTimeMillis();
+        final List<String> expired = new ArrayList<String>();
+        synchronized (mPendingLock) {
+            mScheduledSweep = null;
+            for (final Map.Entry<String, Long> entry : mExpiries.entrySet()) {
+                if (entry.getValue() <= now && expired.size() < SWEEP_BATCH) {
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+        if (!expired.isEmpty()) {
+            beginBatch();
+            try {
+                for (final String key : expired) {
+                    final Long expiresAt = mExpiries.get(key);
+                    if (expiresAt != null && expiresAt <= now) {
+                        remove(key);
+                    }
+                }
+            } finally {
+                endBatch();
+            }
+        }
+        synchronized (mPendingLock) {
+            long next = Long.MAX_VALUE;
+            for (final Long expiresAt : mExpiries.values()) {
+                next = Math.min(next, expiresAt);
+            }
+            if (next != Long.MAX_VALUE) {
+                scheduleSweep(next);
+            }
+        }
+    }
+
+    @Override
+    public SimpleSharedPreferences putString(String key, String value) {
+        final long start = startTiming();
+        try {
+            if (!isUnchanged(key, value)) {
+                writeString(key, value);
+            }
+        } finally {
+            endTiming(Operation.PUT_STRING, start);
+        }
+        return this;
+    }
+
+    private void writeString(String key, String value) {
+        if (value != null && (value.length() >= mCompressionThreshold || StringCompressor.isCompressed(value))) {
+            value = compress(value);
+        }
+        if (writesBehind()) {
+            enqueue(key, value);
+        } else {
+            final Editor editor = beginWrite();
+            editor.putString(key, value);
+            endWrite(editor, key);
+        }
+    }
+
+    /**
+     * Stores the values using {@link #getStringSetCodec()}.
+     */
+    @SuppressWarnings("unchecked")
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    @Override
+    public SimpleSharedPreferences putStringSet(String key, Set<String> values) {
+        if (values == null) {
+            return remove(key);
+        }
+        final long start = startTiming();
+        try {
+            if (isUnchanged(key, values)) {
+                return this;
+            }
+            Object encoded = mStringSetCodec.encode(key, values);
+            if (mEnableLog) {
+                Log.d(TAG, key + ":: " + encoded);
+            }
+            final PreferenceMetrics metrics = mMetrics;
+            if (metrics != null) {
+                metrics.onStringSetEncoded(values.size(), encodedLength(encoded));
+            }
+            if (!(encoded instanceof String) && mCompressionThreshold != Integer.MAX_VALUE
+                    && encodedLength(encoded) >= mCompressionThreshold) {
+                // A native set cannot be compressed, stored as a compressed String instead.
+                encoded = StringSetCodecs.encodeCompact(values);
+            }
+            if (encoded instanceof String) {
+                writeString(key, (String) encoded);
+            } else if (writesBehind()) {
+                enqueue(key, encoded);
+            } else {
+                final Editor editor = beginWrite();
+                editor.putStringSet(key, (Set<String>) encoded);
+                endWrite(editor, key);
+            }
+        } finally {
+            endTiming(Operation.PUT_STRING_SET, start);
+        }
+        return this;
+    }
+
+    /**
+     * Compresses Strings & String sets of at least <b>thresholdChars</b> chars with Deflate,
+     * so that large values take less space in the file & less time to load.<br>
+     * Reads decompress transparently, even after {@link #disableCompression()}.
+     * {@link #getAll()} returns the values as stored. Compression ratio & time are reported to the
+     * {@link #setMetrics(PreferenceMetrics) metrics}.
+     *
+     * @param thresholdChars length of the shortest value to compress, e.g. 1024.
+     */
+    public SimpleSharedPreferences enableCompression(int thresholdChars) {
+        if (thresholdChars < 1) {
+            throw new IllegalArgumentException("thresholdChars should be at least 1");
+        }
+        mCompressionThreshold = thresholdChars;
+        return this;
+    }
+
+    /**
+     * Stops compressing new values, compressed values are still read.
+     */
+    public SimpleSharedPreferences disableCompression() {
+        mCompressionThreshold = Integer.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * @return The compressed value, or <b>value</b> if compressing does not make it shorter.
+     */
+    private String compress(String value) {
+        final long start = startTiming();
+        final String compressed = StringCompressor.compress(value);
+        endTiming(Operation.COMPRESS, start);
+        final PreferenceMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onCompressed(value.length(), compressed.length());
+        }
+        // A value that looks compressed is stored compressed regardless, so it is read back as is.
+        return compressed.length() < value.length() || StringCompressor.isCompressed(value) ? compressed : value;
+    }
+
+    /**
+     * @return The readable value of a stored String.
+     */
+    private String decompress(String key, String stored) {
+        if (!StringCompressor.isCompressed(stored)) {
+            return stored;
+        }
+        final long start = startTiming();
+        try {
+            return mCompressor.decompress(key, stored);
+        } catch (final IllegalArgumentException e) {
+            Log.w(TAG, key + " is not a valid compressed value", e);
+            return stored;
+        } finally {
+            endTiming(Operation.DECOMPRESS, start);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int encodedLength(Object encoded) {
+        if (encoded instanceof String) {
+            return ((String) encoded).length();
+        }
+        int length = 0;
+        for (final String value : (Set<String>) encoded) {
+            length += value == null ? 0 : value.length();
+        }
+        return length;
+    }
+
+    @Override
+    public SimpleSharedPreferences putInt(String key, int value) {
+        final long start = startTiming();
+        try {
+            if (isUnchanged(key, value)) {
+                return this;
+            }
+            if (writesBehind()) {
+                enqueuePrimitive(key, PrimitiveIndex.INT, value);
+            } else {
+                final Editor editor = beginWrite();
+                editor.putInt(key, value);
+                endWrite(editor, key);
+            }
+        } finally {
+            endTiming(Operation.PUT_INT, start);
+        }
+        return this;
+    }
+
+    @Override
+    public SimpleSharedPreferences putLong(String key, long value) {
+        final long start = startTiming();
+        try {
+            if (isUnchanged(key, value)) {
+                return this;
+            }
+            if (writesBehind()) {
+                enqueuePrimitive(key, PrimitiveIndex.LONG, value);
+            } else {
+                final Editor editor = beginWrite();
+                editor.putLong(key, value);
+                endWrite(editor, key);
+            }
+        } finally {
+            endTiming(Operation.PUT_LONG, start);
+        }
+        return this;
+    }
+
+    @Override
+    public SimpleSharedPreferences putFloat(String key, float value) {
+        final long start = startTiming();
+        try {
+            if (isUnchanged(key, value)) {
+                return this;
+            }
+            if (writesBehind()) {
+                enqueuePrimitive(key, PrimitiveIndex.FLOAT, PrimitiveIndex.bits(value));
+            } else {
+                final Editor editor = beginWrite();
+                editor.putFloat(key, value);
+                endWrite(editor, key);
+            }
+        } finally {
+            endTiming(Operation.PUT_FLOAT, start);
+        }
+        return this;
+    }
+
+    @Override
+    public SimpleSharedPreferences putBoolean(String key, boolean value) {
+        final long start = startTiming();
+        try {
+            if (isUnchanged(key, value)) {
+                return this;
+            }
+            if (writesBehind()) {
+                enqueuePrimitive(key, PrimitiveIndex.BOOLEAN, PrimitiveIndex.bits(value));
+            } else {
+                final Editor editor = beginWrite();
+                editor.putBoolean(key, value);
+                endWrite(editor, key);
+            }
+        } finally {
+            endTiming(Operation.PUT_BOOLEAN, start);
+        }
+        return this;
+    }
+
+    @Override
+    public SimpleSharedPreferences remove(String key) {
+        final long start = startTiming();
+        try {
+            if (isUnchanged(key, (String) null)) {
+                return this;
+            }
+            deleteBlob(key);
+            if (writesBehind()) {
+                enqueue(key, REMOVED);
+            } else {
+                final Editor editor = beginWrite();
+                editor.remove(key);
+                endWrite(editor, key);
+            }
+        } finally {
+            endTiming(Operation.REMOVE, start);
+        }
+        return this;
+    }
+
+    /**
+     * Stores a large value out of line, in a file of it's own. The preferences only hold a short reference,
+     * so the value is neither rewritten by other writes nor loaded with the other values.<br>
+     * The file is written in background, values are loaded on first read & cached, see {@link #setBlobCacheSize(long)}.
+     *
+     * @param value copied, null removes the key.
+     */
+    public SimpleSharedPreferences putBytes(String key, byte[] value) {
+        if (value == null) {
+            return remove(key);
+        }
+        writeBytes(key, value.clone());
+        return this;
+    }
+
+    /**
+     * @return A copy of the value stored by {@link #putBytes(String, byte[])}, <b>defValue</b> if absent.
+     * Reads the file if the value is not cached.
+     * @throws ClassCastException if the value was not stored by {@link #putBytes(String, byte[])}.
+     */
+    public byte[] getBytes(String key, byte[] defValue) throws ClassCastException {
+        final byte[] bytes = readBytes(key);
+        return bytes != null ? bytes.clone() : defValue;
+    }
+
+    /**
+     * Same as {@link #putBytes(String, byte[])}, for a value converted by the <b>serializer</b>.
+     *
+     * @param value null removes the key.
+     */
+    public <T> SimpleSharedPreferences putObject(String key, T value, ObjectSerializer<? super T> serializer) {
+        if (value == null) {
+            return remove(key);
+        }
+        writeBytes(key, serializer.serialize(value));
+        return this;
+    }
+
+    /**
+     * @return The value stored by {@link #putObject(String, Object, ObjectSerializer)}, <b>defValue</b> if absent.
+     * @throws ClassCastException if the value was not stored by {@link #putObject(String, Object, ObjectSerializer)}.
+     */
+    public <T> T getObject(String key, T defValue, ObjectSerializer<T> serializer) throws ClassCastException {
+        final byte[] bytes = readBytes(key);
+        return bytes != null ? serializer.deserialize(bytes) : defValue;
+    }
+
+    /**
+     * Directory of the values of {@link #putBytes(String, byte[])}, needed only by {@link #wrap(SharedPreferences)}.
+     * Defaults to <code>files/preferences/blobs/&lt;name&gt;/</code>.
+     *
+     * @throws IllegalStateException if a value was already read or written.
+     */
+    public synchronized SimpleSharedPreferences setBlobDirectory(File directory) {
+        if (directory == null) {
+            throw new NullPointerException("Directory cannot be null");
+        }
+        if (mBlobs != null) {
+            throw new IllegalStateException("Blobs already opened in " + mBlobDirectory);
+        }
+        mBlobDirectory = directory;
+        return this;
+    }
+
+    /**
+     * @param maxBytes total size of the cached values of {@link #putBytes(String, byte[])}, 1MB by default.
+     */
+    public synchronized SimpleSharedPreferences setBlobCacheSize(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes cannot be negative");
+        }
+        mBlobCacheBytes = maxBytes;
+        if (mBlobs != null) {
+            mBlobs.setMaxCacheBytes(maxBytes);
+        }
+        return this;
+    }
+
+    private synchronized BlobStore getBlobs() {
+        if (mBlobs == null) {
+            if (mBlobDirectory == null) {
+                throw new IllegalStateException("Call setBlobDirectory(File) to store blobs of wrapped preferences");
+            }
+            mBlobs = new BlobStore(mBlobDirectory, mBlobCacheBytes);
+        }
+        return mBlobs;
+    }
+
+    /**
+     * @param bytes not modified afterwards.
+     */
+    private void writeBytes(String key, byte[] bytes) {
+        final long generation = mBlobGeneration.incrementAndGet();
+        getBlobs().write(key, generation, bytes);
+        writeString(key, BLOB_PREFIX + Long.toString(generation, Character.MAX_RADIX));
+    }
+
+    /**
+     * @return The stored value, not a copy. Null if absent, or if the file is missing or stale.
+     */
+    private byte[] readBytes(String key) throws ClassCastException {
+        final String reference;
+        try {
+            reference = readString(key, null);
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, TYPE_BYTES, e);
+        }
+        if (reference == null) {
+            return null;
+        }
+        final long generation;
+        try {
+            if (!reference.startsWith(BLOB_PREFIX)) {
+                throw new NumberFormatException(reference);
+            }
+            generation = Long.parseLong(reference.substring(BLOB_PREFIX.length()), Character.MAX_RADIX);
+        } catch (final NumberFormatException e) {
+            throw typeMismatch(key, TYPE_BYTES, new ClassCastException(e.getMessage()));
+        }
+        final byte[] bytes = getBlobs().read(key, generation);
+        if (bytes == null && mEnableLog) {
+            Log.d(TAG, key + "'s blob is missing or stale");
+        }
+        return bytes;
+    }
+
+    /**
+     * Deletes the file of the key, if it's value is a blob.
+     */
+    private void deleteBlob(String key) {
+        if (mBlobDirectory == null) {
+            return;
+        }
+        final String reference;
+        try {
+            reference = readStoredString(key);
+        } catch (final ClassCastException e) {
+            return;
+        }
+        if (reference != null && reference.startsWith(BLOB_PREFIX)) {
+            getBlobs().delete(key);
+        }
+    }
+
+    @Override
+    public SimpleSharedPreferences clear() {
+        final long start = startTiming();
+        try {
+            mStringSetCache.clear();
+            if (mBlobDirectory != null) {
+                getBlobs().clear();
+            }
+            if (writesBehind()) {
+                enqueueClear();
+            } else {
+                final Editor editor = beginWrite();
+                editor.clear();
+                endWrite(editor, null);
+            }
+        } finally {
+            endTiming(Operation.CLEAR, start);
+        }
+        return this;
+    }
+
+    /**
+     * Starts a batch. Until the matching {@link #endBatch()} every put/remove/clear is only
+     * buffered in the {@link Editor}, and all of them are written with a single {@link #apply()}.<br>
+     * Batches can be nested, only the outermost {@link #endBatch()} writes to disk.<br>
+     * A batch belongs to the calling thread, writes from other threads are not part of it.
+     * In {@link #enableWriteBehind(long, int)} mode the batch is not queued, it's written right after the queue.
+     */
+    @SuppressLint("CommitPrefEdits")
+    public SimpleSharedPreferences beginBatch() {
+        final Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.depth++;
+        } else {
+            mBatch.set(new Batch(getPreferences().edit()));
+        }
+        return this;
+    }
+
+    /**
+     * Ends the batch started by {@link #beginBatch()}, writes all buffered changes at once.
+     *
+     * @throws IllegalStateException if no batch was started.
+     */
+    public SimpleSharedPreferences endBatch() {
+        final Batch batch = mBatch.get();
+        if (batch == null) {
+            throw new IllegalStateException("endBatch() called without beginBatch()");
+        }
+        if (--batch.depth > 0) {
+            return this;
+        }
+        mBatch.remove();
+        if (batch.expiries || batch.writes > 0 && mWriteBehind) {
+            synchronized (mPendingLock) {
+                if (mWriteBehind) {
+                    // The pending changes are older than the batch, written first.
+                    flushNow();
+                }
+                if (batch.expiries) {
+                    // Written with the latest index, in order with the other writes of the index.
+                    putExpiries(batch.editor);
+                }
+                saveBatch(batch);
+            }
+        } else if (batch.writes > 0) {
+            saveBatch(batch);
+        }
+        return this;
+    }
+
+    private void saveBatch(Batch batch) {
+        mSavedWriteCount.addAndGet(batch.writes - 1);
+        save(batch.editor);
+    }
+
+    /**
+     * Runs <b>block</b> inside {@link #beginBatch()} / {@link #endBatch()}.
+     * <p/>
+     * <pre>
+     * mPreferences.batch(new Runnable() {
+     *     public void run() {
+     *         mPreferences.putInt(KEY_1, 1).putLong(KEY_2, 2L).putString(KEY_3, "3");
+     *     }
+     * });
+     * </pre>
+     *
+     * @param block writes to be done in a single disk write.
+     */
+    public SimpleSharedPreferences batch(Runnable block) {
+        beginBatch();
+        try {
+            block.run();
+        } finally {
+            endBatch();
+        }
+        return this;
+    }
+
+    /**
+     * @return true if the calling thread is between {@link #beginBatch()} & {@link #endBatch()}.
+     */
+    public boolean isInBatch() {
+        return mBatch.get() != null;
+    }
+
+    /**
+     * @return true if the writes of the calling thread are queued by write-behind, writes of a batch are not.
+     */
+    private boolean writesBehind() {
+        return mWriteBehind && mBatch.get() == null;
+    }
+
+    /**
+     * Skips writes of the value a key already has, such writes neither write to disk nor notify listeners.<br>
+     * Each write first reads the current value, see {@link #getSuppressedWriteCount()}.
+     * Writes within a batch are never skipped.
+     *
+     * @param skip true to compare each write with the current value, false by default.
+     */
+    public SimpleSharedPreferences setSkipUnchangedWrites(boolean skip) {
+        mSkipUnchangedWrites = skip;
+        return this;
+    }
+
+    /**
+     * @return The number of writes skipped by {@link #setSkipUnchangedWrites(boolean)}, since the app was started.
+     */
+    public long getSuppressedWriteCount() {
+        return mSuppressedWriteCount.get();
+    }
+
+    /**
+     * @return false if unchanged writes are not skipped, else true if the key already has the value.
+     * A null value is unchanged if the key is absent, an expired key is still present until removed.
+     */
+    private boolean isUnchanged(String key, String value) {
+        if (!mSkipUnchangedWrites || mBatch.get() != null) {
+            return false;
+        }
+        try {
+            return suppressed(value == null ? !isStored(key) : value.equals(readString(key, null)));
+        } catch (final ClassCastException e) {
+            return false;
+        }
+    }
+
+    private boolean isUnchanged(String key, Set<String> values) {
+        if (!mSkipUnchangedWrites || mBatch.get() != null) {
+            return false;
+        }
+        try {
+            return suppressed(values.equals(readStringSet(key, null)));
+        } catch (final ClassCastException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The default values differ from <b>value</b>, so that an absent key is never unchanged.
+     */
+    private boolean isUnchanged(String key, int value) {
+        if (!mSkipUnchangedWrites || mBatch.get() != null) {
+            return false;
+        }
+        try {
+            return suppressed(readInt(key, ~value) == value);
+        } catch (final ClassCastException e) {
+            return false;
+        }
+    }
+
+    private boolean isUnchanged(String key, long value) {
+        if (!mSkipUnchangedWrites || mBatch.get() != null) {
+            return false;
+        }
+        try {
+            return suppressed(readLong(key, ~value) == value);
+        } catch (final ClassCastException e) {
+            return false;
+        }
+    }
+
+    private boolean isUnchanged(String key, float value) {
+        if (!mSkipUnchangedWrites || mBatch.get() != null) {
+            return false;
+        }
+        try {
+            final float current = readFloat(key, value == 0 ? 1 : 0);
+            return suppressed(Float.floatToIntBits(current) == Float.floatToIntBits(value));
+        } catch (final ClassCastException e) {
+            return false;
+        }
+    }
+
+    private boolean isUnchanged(String key, boolean value) {
+        if (!mSkipUnchangedWrites || mBatch.get() != null) {
+            return false;
+        }
+        try {
+            return suppressed(readBoolean(key, !value) == value);
+        } catch (final ClassCastException e) {
+            return false;
+        }
+    }
+
+    private boolean suppressed(boolean unchanged) {
+        if (unchanged) {
+            mSuppressedWriteCount.incrementAndGet();
+        }
+        return unchanged;
+    }
+
+    /**
+     * @return The number of disk writes of this file avoided by batching, since the app was started.
+     */
+    public long getSavedWriteCount() {
+        return mSavedWriteCount.get();
+    }
+
+    /**
+     * Enables write-behind. Changes are kept in memory & written together with a single {@link #apply()},
+     * <b>flushWindowMillis</b> after the first pending change,
+     * or as soon as <b>maxPendingWrites</b> changes are pending, whichever is earlier.<br>
+     * All reads see the pending changes. Call {@link #flushNow()} from {@link Activity#onPause()}.
+     *
+     * @param flushWindowMillis time in milliseconds to coalesce changes.
+     * @param maxPendingWrites  number of pending changes which forces a flush.
+     */
+    public SimpleSharedPreferences enableWriteBehind(long flushWindowMillis, int maxPendingWrites) {
+        if (flushWindowMillis < 0) {
+            throw new IllegalArgumentException("flushWindowMillis cannot be negative");
+        }
+        if (maxPendingWrites < 1) {
+            throw new IllegalArgumentException("maxPendingWrites should be at least 1");
+        }
+        synchronized (mPendingLock) {
+            mFlushWindowMillis = flushWindowMillis;
+            mMaxPendingWrites = maxPendingWrites;
+            mWriteBehind = true;
+        }
+        return this;
+    }
+
+    /**
+     * Writes all pending changes & disables write-behind.
+     */
+    public SimpleSharedPreferences disableWriteBehind() {
+        synchronized (mPendingLock) {
+            // Flushed first, reads check the flag without the lock & would miss the pending values.
+            flushNow();
+            mWriteBehind = false;
+        }
+        return this;
+    }
+
+    /**
+     * @return true if {@link #enableWriteBehind(long, int)} is active.
+     */
+    public boolean isWriteBehindEnabled() {
+        return mWriteBehind;
+    }
+
+    /**
+     * @return The number of changes waiting to be written.
+     */
+    public int getPendingWriteCount() {
+        synchronized (mPendingLock) {
+            return mPendingMutations;
+        }
+    }
+
+    /**
+     * Writes all pending changes & counters with a single {@link #apply()}, immediately.<br>
+     * The changes are swapped out under {@link #mPendingLock} & saved after releasing it, reads see them
+     * till the backend has them. Flushes are saved one at a time, in order.
+     */
+    public SimpleSharedPreferences flushNow() {
+        final Editor editor;
+        synchronized (mPendingLock) {
+            awaitFlush();
+            if (mScheduledFlush != null) {
+                mScheduledFlush.cancel(false);
+                mScheduledFlush = null;
+            }
+            if (mPendingMutations == 0 && !hasDirtyCounter()) {
+                return this;
+            }
+            editor = getPreferences().edit();
+            if (mPendingClear) {
+                editor.clear();
+            }
+            for (final Map.Entry<String, Object> entry : mPendingWrites.entrySet()) {
+                putInEditor(editor, entry.getKey(), entry.getValue());
+            }
+            for (int slot = 0; slot < mPendingPrimitives.capacity(); slot++) {
+                final String key = mPendingPrimitives.keyAt(slot);
+                if (key != null) {
+                    putInEditor(editor, key, mPendingPrimitives.typeAt(slot), mPendingPrimitives.bitsAt(slot));
+                }
+            }
+            for (final Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+                final Counter counter = entry.getValue();
+                if (counter.dirty) {
+                    counter.dirty = false;
+                    putInEditor(editor, entry.getKey(), counter.type, counter.value.get());
+                }
+            }
+            if (mPendingMutations > 1) {
+                mSavedWriteCount.addAndGet(mPendingMutations - 1);
+            }
+            // The emptied maps of the previous flush take the next changes.
+            final Map<String, Object> writes = mFlushingWrites;
+            mFlushingWrites = mPendingWrites;
+            mPendingWrites = writes;
+            final PrimitiveIndex primitives = mFlushingPrimitives;
+            mFlushingPrimitives = mPendingPrimitives;
+            mPendingPrimitives = primitives;
+            mFlushingClear = mPendingClear;
+            mPendingClear = false;
+            mPendingMutations = 0;
+            mFlushing = true;
+        }
+        // Still under the lock when the caller holds it, e.g. endBatch().
+        try {
+            save(editor);
+        } finally {
+            synchronized (mPendingLock) {
+                mFlushingWrites.clear();
+                mFlushingPrimitives.clear();
+                mFlushingClear = false;
+                mFlushing = false;
+                mPendingLock.notifyAll();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Waits till the flush being saved is in the backend, releasing the lock meanwhile. Must hold {@link #mPendingLock}.
+     */
+    private void awaitFlush() {
+        boolean interrupted = false;
+        while (mFlushing) {
+            try {
+                mPendingLock.wait();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void putInEditor(Editor editor, String key, Object value) {
+        if (value == REMOVED) {
+            editor.remove(key);
+        } else if (value instanceof String) {
+            editor.putString(key, (String) value);
+        } else if (value instanceof Integer) {
+            editor.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            editor.putLong(key, (Long) value);
+        } else if (value instanceof Float) {
+            editor.putFloat(key, (Float) value);
+        } else if (value instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Set) {
+            editor.putStringSet(key, (Set<String>) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported type for " + key + ": " + value.getClass());
+        }
+    }
+
+    private static void putInEditor(Editor editor, String key, byte type, long bits) {
+        switch (type) {
+            case PrimitiveIndex.INT:
+                editor.putInt(key, (int) bits);
+                break;
+            case PrimitiveIndex.LONG:
+                editor.putLong(key, bits);
+                break;
+            case PrimitiveIndex.FLOAT:
+                editor.putFloat(key, Float.intBitsToFloat((int) bits));
+                break;
+            default:
+                editor.putBoolean(key, bits != 0);
+                break;
+        }
+    }
+
+    private void enqueue(String key, Object value) {
+        final boolean flush;
+        synchronized (mPendingLock) {
+            final Object pending = value == null ? REMOVED : value;
+            if (!mWriteBehind) {
+                // Disabled while waiting for the lock.
+                final Editor editor = beginWrite();
+                putInEditor(editor, key, pending);
+                endWrite(editor, key);
+                return;
+            }
+            dropCounter(key);
+            enqueueDroppedExpiry(key);
+            mPendingPrimitives.remove(key);
+            mPendingWrites.put(key, pending);
+            flush = pendingChanged();
+        }
+        if (flush) {
+            flushNow();
+        }
+    }
+
+    /**
+     * Same as {@link #enqueue(String, Object)}, without boxing the value.
+     */
+    private void enqueuePrimitive(String key, byte type, long bits) {
+        final boolean flush;
+        synchronized (mPendingLock) {
+            if (!mWriteBehind) {
+                final Editor editor = beginWrite();
+                putInEditor(editor, key, type, bits);
+                endWrite(editor, key);
+                return;
+            }
+            dropCounter(key);
+            enqueueDroppedExpiry(key);
+            mPendingWrites.remove(key);
+            mPendingPrimitives.put(key, type, bits);
+            flush = pendingChanged();
+        }
+        if (flush) {
+            flushNow();
+        }
+    }
+
+    private void enqueueClear() {
+        final boolean flush;
+        synchronized (mPendingLock) {
+            if (!mWriteBehind) {
+                final Editor editor = beginWrite();
+                editor.clear();
+                endWrite(editor, null);
+                return;
+            }
+            dropCounter(null);
+            dropExpiry(null);
+            mPendingPrimitives.clear();
+            mPendingWrites.clear();
+            mPendingClear = true;
+            flush = pendingChanged();
+        }
+        if (flush) {
+            flushNow();
+        }
+    }
+
+    /**
+     * Schedules a flush at the end of the window. Must hold {@link #mPendingLock}.
+     *
+     * @return true if too many changes are pending, {@link #flushNow()} to be called after releasing the lock.
+     */
+    private boolean pendingChanged() {
+        mPendingMutations++;
+        if (mPendingMutations >= mMaxPendingWrites) {
+            return true;
+        }
+        if (mScheduledFlush == null) {
+            mScheduledFlush = getFlushScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    SimpleSharedPreferences.this.flushNow();
+                }
+            }, mFlushWindowMillis, TimeUnit.MILLISECONDS);
+        }
+        return false;
+    }
+
+    static synchronized ScheduledExecutorService getFlushScheduler() {
+        if (mFlushScheduler == null) {
+            mFlushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, TAG + "-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mFlushScheduler;
+    }
+
+    /**
+     * @return The pending value of the key, {@link #REMOVED} if removed or cleared,
+     * {@link #NOT_PENDING} if the key has no pending change.
+     */
+    private Object getPending(String key) {
+        if (!mWriteBehind) {
+            return NOT_PENDING;
+        }
+        synchronized (mPendingLock) {
+            return getPendingLocked(key);
+        }
+    }
+
+    /**
+     * Same as {@link #getPending(String)}, also looks in the flush being saved. Must hold {@link #mPendingLock}.
+     */
+    private Object getPendingLocked(String key) {
+        if (mPendingWrites.containsKey(key)) {
+            return mPendingWrites.get(key);
+        }
+        int slot = mPendingPrimitives.indexOf(key);
+        if (slot >= 0) {
+            return mPendingPrimitives.boxAt(slot);
+        }
+        if (mPendingClear) {
+            return REMOVED;
+        }
+        if (!mFlushing) {
+            return NOT_PENDING;
+        }
+        if (mFlushingWrites.containsKey(key)) {
+            return mFlushingWrites.get(key);
+        }
+        slot = mFlushingPrimitives.indexOf(key);
+        if (slot >= 0) {
+            return mFlushingPrimitives.boxAt(slot);
+        }
+        return mFlushingClear ? REMOVED : NOT_PENDING;
+    }
+
+    /**
+     * <h1><u>Do not use this method</u></h1> <br>
+     * Every change is already written, this writes only the changes pending in write-behind mode.
+     */
+    @Deprecated
+    @Override
+    public boolean commit() {
+        flushNow();
+        return true;
+    }
+
+    /**
+     * Every change is already written, this writes only the changes pending in write-behind mode.
+     */
+    @Override
+    public void apply() {
+        flushNow();
+    }
+
+    @Override
+    public Map<String, ?> getAll() throws ClassCastException {
+        if (!mCounters.isEmpty() || hasExpiries()) {
+            final Map<String, Object> all = new HashMap<String, Object>(getAllPending());
+            for (final Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+                final Counter counter = entry.getValue();
+                final long value = counter.value.get();
+                all.put(entry.getKey(), counter.type == PrimitiveIndex.INT ? (Object) (int) value : (Object) value);
+            }
+            removeExpired(all);
+            return all;
+        }
+        return getAllPending();
+    }
+
+    /**
+     * @return All stored values, with the pending changes of write-behind.
+     */
+    private Map<String, ?> getAllPending() {
+        if (!mWriteBehind) {
+            return getPreferences().getAll();
+        }
+        synchronized (mPendingLock) {
+            final Map<String, Object> all = new HashMap<String, Object>();
+            if (!mPendingClear && !mFlushingClear) {
+                all.putAll(getPreferences().getAll());
+            }
+            putPending(all, null, "");
+            return all;
+        }
+    }
+
+    /**
+     * Reads the keys together, no change of this instance is written in between the reads.<br>
+     * Only the requested keys are read, unlike {@link #getAll()}.
+     */
+    public PreferenceSnapshot snapshot(String... keys) {
+        return new PreferenceSnapshot(readConsistent(new HashSet<String>(Arrays.asList(keys)), null),
+                mStringSetCodec);
+    }
+
+    /**
+     * Same as {@link #snapshot(String...)}, for typed keys.
+     */
+    public PreferenceSnapshot snapshot(PrefKey<?>... keys) {
+        final Set<String> names = new HashSet<String>(keys.length * 2);
+        for (final PrefKey<?> key : keys) {
+            names.add(key.name);
+        }
+        return new PreferenceSnapshot(readConsistent(names, null), mStringSetCodec);
+    }
+
+    /**
+     * Same as {@link #getAll()}, for the keys starting with <b>prefix</b>.<br>
+     * The backends of {@link PreferenceStores} skip other keys without copying them.
+     *
+     * @return Unmodifiable values, read together like {@link #snapshot(String...)}.
+     */
+    public Map<String, ?> getAllWithPrefix(String prefix) {
+        if (prefix == null) {
+            throw new NullPointerException("Prefix cannot be null");
+        }
+        return Collections.unmodifiableMap(readConsistent(null, prefix));
+    }
+
+    /**
+     * Reads either the <b>keys</b> or the keys starting with <b>prefix</b>, including pending changes & counters.
+     * Holds {@link #mPendingLock} so that no change is swapped out in between, the flush being saved is read too.
+     */
+    private Map<String, Object> readConsistent(Set<String> keys, String prefix) {
+        final SharedPreferences preferences = getPreferences();
+        synchronized (mPendingLock) {
+            final Map<String, Object> values;
+            if (mPendingClear || mFlushingClear) {
+                values = new HashMap<String, Object>();
+            } else if (preferences instanceof AbstractPreferences) {
+                final AbstractPreferences store = (AbstractPreferences) preferences;
+                values = keys != null ? store.read(keys) : store.readPrefix(prefix);
+            } else {
+                // The platform has no untyped read of a key, getAll() is it's only consistent read.
+                values = new HashMap<String, Object>();
+                for (final Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                    if (matches(entry.getKey(), keys, prefix)) {
+                        values.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            putPending(values, keys, prefix);
+            for (final Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+                if (matches(entry.getKey(), keys, prefix)) {
+                    final Counter counter = entry.getValue();
+                    final long value = counter.value.get();
+                    values.put(entry.getKey(),
+                            counter.type == PrimitiveIndex.INT ? (Object) (int) value : (Object) value);
+                }
+            }
+            removeExpired(values);
+            return values;
+        }
+    }
+
+    /**
+     * Puts the pending changes of the matching keys in <b>values</b>, over the changes of the flush being saved.
+     * Must hold {@link #mPendingLock}.
+     */
+    private void putPending(Map<String, Object> values, Set<String> keys, String prefix) {
+        if (mFlushing && !mPendingClear) {
+            putChanges(values, mFlushingWrites, mFlushingPrimitives, keys, prefix);
+        }
+        putChanges(values, mPendingWrites, mPendingPrimitives, keys, prefix);
+    }
+
+    private static void putChanges(Map<String, Object> values, Map<String, Object> writes,
+                                   PrimitiveIndex primitives, Set<String> keys, String prefix) {
+        for (final Map.Entry<String, Object> entry : writes.entrySet()) {
+            if (matches(entry.getKey(), keys, prefix)) {
+                if (entry.getValue() == REMOVED) {
+                    values.remove(entry.getKey());
+                } else {
+                    values.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (int slot = 0; slot < primitives.capacity(); slot++) {
+            final String key = primitives.keyAt(slot);
+            if (key != null && matches(key, keys, prefix)) {
+                values.put(key, primitives.boxAt(slot));
+            }
+        }
+    }
+
+    private static boolean matches(String key, Set<String> keys, String prefix) {
+        return keys != null ? keys.contains(key) : key.startsWith(prefix);
+    }
+
+    @Override
+    public String getString(String key, String defValue) throws ClassCastException {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_STRING);
+        }
+        try {
+            return readString(key, defValue);
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, TYPE_STRING, e);
+        } finally {
+            endTiming(Operation.GET_STRING, start);
+        }
+    }
+
+    /**
+     * Same as {@link #getString(String, String)}, but returns <b>defValue</b> instead of throwing
+     * {@link ClassCastException}.
+     */
+    public String getStringSafe(String key, String defValue) {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_STRING);
+        }
+        try {
+            return readString(key, defValue);
+        } catch (final ClassCastException e) {
+            recordTypeMismatch(key, TYPE_STRING);
+            return defValue;
+        } finally {
+            endTiming(Operation.GET_STRING, start);
+        }
+    }
+
+    private String readString(String key, String defValue) throws ClassCastException {
+        if (isExpired(key)) {
+            return defValue;
+        }
+        final String value = readStoredString(key);
+        return value != null ? decompress(key, value) : defValue;
+    }
+
+    /**
+     * @return The stored & still compressed value, even if expired; null if absent.
+     */
+    private String readStoredString(String key) throws ClassCastException {
+        final Object pending = getPending(key);
+        if (pending == NOT_PENDING) {
+            return getPreferences().getString(key, null);
+        }
+        return pending == REMOVED ? null : (String) pending;
+    }
+
+    /**
+     * Reads values written by any {@link StringSetCodec}, including the JSON format used till version 2.0.0.<br>
+     * Decoded values are cached, the returned set is <b>unmodifiable</b>.
+     */
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) throws ClassCastException {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_STRING_SET);
+        }
+        try {
+            return readStringSet(key, defValues);
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, TYPE_STRING_SET, e);
+        } finally {
+            endTiming(Operation.GET_STRING_SET, start);
+        }
+    }
+
+    /**
+     * Same as {@link #getStringSet(String, Set)}, but returns <b>defValues</b> instead of throwing
+     * {@link ClassCastException}.
+     */
+    public Set<String> getStringSetSafe(String key, Set<String> defValues) {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_STRING_SET);
+        }
+        try {
+            return readStringSet(key, defValues);
+        } catch (final ClassCastException e) {
+            recordTypeMismatch(key, TYPE_STRING_SET);
+            return defValues;
+        } finally {
+            endTiming(Operation.GET_STRING_SET, start);
+        }
+    }
+
+    private Set<String> readStringSet(String key, Set<String> defValues) throws ClassCastException {
+        final Object stored = getStoredStringSet(key);
+        if (stored == null) {
+            return defValues;
+        }
+        final Set<String> cached = mStringSetCache.get(key, stored);
+        if (cached != null) {
+            return cached;
+        }
+        final Set<String> values = mStringSetCodec.decode(key,
+                stored instanceof String ? decompress(key, (String) stored) : stored);
+        if (values == null) {
+            if (mEnableLog) {
+                Log.d(TAG, key + " is not a valid String set :: " + stored);
+            }
+            return defValues;
+        }
+        return mStringSetCache.put(key, stored, values);
+    }
+
+    /**
+     * @return The {@link String} or {@code Set<String>} stored for the key, null if absent.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Object getStoredStringSet(String key) throws ClassCastException {
+        if (isExpired(key)) {
+            return null;
+        }
+        final Object pending = getPending(key);
+        if (pending != NOT_PENDING) {
+            return pending == REMOVED ? null : pending;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return getPreferences().getString(key, null);
+        }
+        // Tries the format of the codec first, a ClassCastException is thrown & caught only for the other format.
+        if (mStringSetCodec == StringSetCodecs.NATIVE) {
+            try {
+                return getPreferences().getStringSet(key, null);
+            } catch (final ClassCastException e) {
+                // Written by an other codec, an older version, or compressed.
+                return getPreferences().getString(key, null);
+            }
+        }
+        try {
+            return getPreferences().getString(key, null);
+        } catch (final ClassCastException e) {
+            // Not a String, may be stored natively by StringSetCodecs.NATIVE.
+            return getPreferences().getStringSet(key, null);
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) throws ClassCastException {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_INT);
+        }
+        try {
+            return readInt(key, defValue);
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, TYPE_INT, e);
+        } finally {
+            endTiming(Operation.GET_INT, start);
+        }
+    }
+
+    /**
+     * Same as {@link #getInt(String, int)}, but returns <b>defValue</b> instead of throwing
+     * {@link ClassCastException}.
+     */
+    public int getIntSafe(String key, int defValue) {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_INT);
+        }
+        try {
+            return readInt(key, defValue);
+        } catch (final ClassCastException e) {
+            recordTypeMismatch(key, TYPE_INT);
+            return defValue;
+        } finally {
+            endTiming(Operation.GET_INT, start);
+        }
+    }
+
+    private int readInt(String key, int defValue) throws ClassCastException {
+        if (isExpired(key)) {
+            return defValue;
+        }
+        final Counter counter = mCounters.isEmpty() ? null : mCounters.get(key);
+        if (counter != null) {
+            if (counter.type != PrimitiveIndex.INT) {
+                throw new ClassCastException();
+            }
+            return (int) counter.value.get();
+        }
+        if (mWriteBehind) {
+            final Object pending;
+            synchronized (mPendingLock) {
+                final int slot = mPendingPrimitives.find(key, PrimitiveIndex.INT);
+                if (slot >= 0) {
+                    return (int) mPendingPrimitives.bitsAt(slot);
+                }
+                pending = getPendingLocked(key);
+            }
+            if (pending != NOT_PENDING) {
+                return pending == REMOVED ? defValue : (Integer) pending;
+            }
+        }
+        return getPreferences().getInt(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) throws ClassCastException {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_LONG);
+        }
+        try {
+            return readLong(key, defValue);
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, TYPE_LONG, e);
+        } finally {
+            endTiming(Operation.GET_LONG, start);
+        }
+    }
+
+    /**
+     * Same as {@link #getLong(String, long)}, but returns <b>defValue</b> instead of throwing
+     * {@link ClassCastException}.
+     */
+    public long getLongSafe(String key, long defValue) {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_LONG);
+        }
+        try {
+            return readLong(key, defValue);
+        } catch (final ClassCastException e) {
+            recordTypeMismatch(key, TYPE_LONG);
+            return defValue;
+        } finally {
+            endTiming(Operation.GET_LONG, start);
+        }
+    }
+
+    private long readLong(String key, long defValue) throws ClassCastException {
+        if (isExpired(key)) {
+            return defValue;
+        }
+        final Counter counter = mCounters.isEmpty() ? null : mCounters.get(key);
+        if (counter != null) {
+            if (counter.type != PrimitiveIndex.LONG) {
+                throw new ClassCastException();
+            }
+            return counter.value.get();
+        }
+        if (mWriteBehind) {
+            final Object pending;
+            synchronized (mPendingLock) {
+                final int slot = mPendingPrimitives.find(key, PrimitiveIndex.LONG);
+                if (slot >= 0) {
+                    return mPendingPrimitives.bitsAt(slot);
+                }
+                pending = getPendingLocked(key);
+            }
+            if (pending != NOT_PENDING) {
+                return pending == REMOVED ? defValue : (Long) pending;
+            }
+        }
+        return getPreferences().getLong(key, defValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) throws ClassCastException {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_FLOAT);
+        }
+        try {
+            return readFloat(key, defValue);
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, TYPE_FLOAT, e);
+        } finally {
+            endTiming(Operation.GET_FLOAT, start);
+        }
+    }
+
+    /**
+     * Same as {@link #getFloat(String, float)}, but returns <b>defValue</b> instead of throwing
+     * {@link ClassCastException}.
+     */
+    public float getFloatSafe(String key, float defValue) {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_FLOAT);
+        }
+        try {
+            return readFloat(key, defValue);
+        } catch (final ClassCastException e) {
+            recordTypeMismatch(key, TYPE_FLOAT);
+            return defValue;
+        } finally {
+            endTiming(Operation.GET_FLOAT, start);
+        }
+    }
+
+    private float readFloat(String key, float defValue) throws ClassCastException {
+        if (isExpired(key)) {
+            return defValue;
+        }
+        if (mWriteBehind) {
+            final Object pending;
+            synchronized (mPendingLock) {
+                final int slot = mPendingPrimitives.find(key, PrimitiveIndex.FLOAT);
+                if (slot >= 0) {
+                    return Float.intBitsToFloat((int) mPendingPrimitives.bitsAt(slot));
+                }
+                pending = getPendingLocked(key);
+            }
+            if (pending != NOT_PENDING) {
+                return pending == REMOVED ? defValue : (Float) pending;
+            }
+        }
+        return getPreferences().getFloat(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) throws ClassCastException {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_BOOLEAN);
+        }
+        try {
+            return readBoolean(key, defValue);
+        } catch (final ClassCastException e) {
+            throw typeMismatch(key, TYPE_BOOLEAN, e);
+        } finally {
+            endTiming(Operation.GET_BOOLEAN, start);
+        }
+    }
+
+    /**
+     * Same as {@link #getBoolean(String, boolean)}, but returns <b>defValue</b> instead of throwing
+     * {@link ClassCastException}.
      */
-    public static SimpleSharedPreferences initialize(Application context) {
-        if (context == null) {
-            throw new NullPointerException("Context cannot be null");
+    public boolean getBooleanSafe(String key, boolean defValue) {
+        final long start = startTiming();
+        if (mRecordingStartup) {
+            recordStartupRead(key, PROFILE_BOOLEAN);
         }
-        if (mSharedPreferences != null) {
-            throw new ExceptionInInitializerError("SimpleSharedPreferences already initialized.");
+        try {
+            return readBoolean(key, defValue);
+        } catch (final ClassCastException e) {
+            recordTypeMismatch(key, TYPE_BOOLEAN);
+            return defValue;
+        } finally {
+            endTiming(Operation.GET_BOOLEAN, start);
+        }
+    }
+
+    private boolean readBoolean(String key, boolean defValue) throws ClassCastException {
+        if (isExpired(key)) {
+            return defValue;
+        }
+        if (mWriteBehind) {
+            final Object pending;
+            synchronized (mPendingLock) {
+                final int slot = mPendingPrimitives.find(key, PrimitiveIndex.BOOLEAN);
+                if (slot >= 0) {
+                    return mPendingPrimitives.bitsAt(slot) != 0;
+                }
+                pending = getPendingLocked(key);
+            }
+            if (pending != NOT_PENDING) {
+                return pending == REMOVED ? defValue : (Boolean) pending;
+            }
         }
-        mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
-        getInstance().incrementAppOpenedCount();
-        return getInstance();
+        return getPreferences().getBoolean(key, defValue);
     }
 
     /**
-     * Initiates SharedPreferences.
+     * Builds the {@link ClassCastException} thrown when the stored value is not of the expected type.
+     * Runs only on the failure path.
      */
-    public static SimpleSharedPreferences getInstance() {
-        initCheck();
-        if (mInstance == null) {
-            synchronized (SimpleSharedPreferences.class) {
-                mInstance = new SimpleSharedPreferences();
+    private ClassCastException typeMismatch(String key, String expectedType, ClassCastException cause) {
+        recordTypeMismatch(key, expectedType);
+        final ClassCastException exception = new ClassCastException(getDetailMessage(key, expectedType,
+                actualType(key, cause)));
+        exception.initCause(cause);
+        return exception;
+    }
+
+    /**
+     * @return The type of the stored value, read alone so that a burst of mismatches never copies all values.
+     */
+    private String actualType(String key, ClassCastException cause) {
+        Object actual = getPending(key);
+        if (actual == NOT_PENDING) {
+            final SharedPreferences preferences = getPreferences();
+            if (!(preferences instanceof AbstractPreferences)) {
+                // The platform has no single-key read, its message names the stored type.
+                return cause != null && cause.getMessage() != null ? cause.getMessage() : "another type";
             }
+            actual = ((AbstractPreferences) preferences).read(key);
         }
-        return mInstance;
+        return actual == null || actual == REMOVED ? "nothing" : actual.getClass().getName();
+    }
+
+    private String getDetailMessage(String key, String expectedType, String actualType) {
+        return "\n ======================================== \n"
+                + "ClassCastException : " + key + "'s value is not a "
+                + expectedType + ", found " + actualType + " \n ======================================== \n";
     }
 
     /**
-     * Check if PreferenceManager is Initialized.
-     * Checks SharedPreferences & Creates a new Editor for these preferences if required.
+     * @return The value of the key, or it's default value.
+     * @throws ClassCastException if the value is not a String.
      */
-    @SuppressLint("CommitPrefEdits")
-    private static void initCheck() {
-        if (mSharedPreferences == null) {
-            throw new InstantiationError("SimpleSharedPreferences not initialized.\n"
-                    + "Initialize by calling 'SimpleSharedPreferences.initialize(this)' "
-                    + "from `MyApplication extends Application`\n\n"
-                    + "public class MyApplication extends Application {\n" +
-                    "    @Override\n" +
-                    "    public void onCreate() {\n" +
-                    "        super.onCreate();\n" +
-                    "        SimpleSharedPreferences.initialize(this);\n" +
-                    "        ...\n" +
-                    "        ...\n" +
-                    "    }\n" +
-                    "}");
-        }
-        if (mEditor == null) {
-            mEditor = mSharedPreferences.edit();
-        }
+    public String get(PrefKey.StringKey key) throws ClassCastException {
+        return getString(key.name, key.defValue);
     }
 
     /**
-     * @return the status of Log
+     * @return The value of the key, or it's default value.
+     * @throws ClassCastException if the value is not a Set&lt;String&gt;.
      */
-    public boolean isLogEnabled() {
-        return mEnableLog;
+    public Set<String> get(PrefKey.StringSetKey key) throws ClassCastException {
+        return getStringSet(key.name, key.defValue);
     }
 
     /**
-     * Enables/Disables printing LogValues.
-     *
-     * @param enableLog true is log should be enabled.
+     * @return The value of the key, or it's default value.
+     * @throws ClassCastException if the value is not an int.
      */
-    public void enableLog(boolean enableLog) {
-        mEnableLog = enableLog;
+    public int get(PrefKey.IntKey key) throws ClassCastException {
+        return getInt(key.name, key.defValue);
     }
 
     /**
-     * Increment's App opened count by <b>1</b>
+     * @return The value of the key, or it's default value.
+     * @throws ClassCastException if the value is not a long.
      */
-    private void incrementAppOpenedCount() {
-        final int appOpenedCount = getAppOpenedCount();
-        if (mEnableLog) {
-            Log.d(TAG, "Count before updating " + appOpenedCount);
-        }
-        mEditor.putInt(KEYS.OPENED_TIMES_COUNT, (appOpenedCount + 1));
-        apply();
+    public long get(PrefKey.LongKey key) throws ClassCastException {
+        return getLong(key.name, key.defValue);
     }
 
     /**
-     * @return The number of times the was opened. This will not autoupdate, everytime the app is opened.<br>
-     * You should call {@link #incrementAppOpenedCount()} on {@link Activity#onStart()} to update this.
+     * @return The value of the key, or it's default value.
+     * @throws ClassCastException if the value is not a float.
      */
-    public int getAppOpenedCount() {
-        return mSharedPreferences.getInt(KEYS.OPENED_TIMES_COUNT, 0);
+    public float get(PrefKey.FloatKey key) throws ClassCastException {
+        return getFloat(key.name, key.defValue);
     }
 
-    @Override
-    public SimpleSharedPreferences putString(String key, String value) {
-        mEditor.putString(key, value);
-        commit();
-        return mInstance;
+    /**
+     * @return The value of the key, or it's default value.
+     * @throws ClassCastException if the value is not a boolean.
+     */
+    public boolean get(PrefKey.BooleanKey key) throws ClassCastException {
+        return getBoolean(key.name, key.defValue);
     }
 
-    @Override
-    public SimpleSharedPreferences putStringSet(String key, Set<String> values) throws Error {
-        final JSONArray jArray = new JSONArray();
-        for (final String value : values) {
-            jArray.put(value);
-        }
+    public SimpleSharedPreferences put(PrefKey.StringKey key, String value) {
+        return putString(key.name, value);
+    }
 
-        final JSONObject json = new JSONObject();
-        try {
-            json.put(key, jArray);
-            putString(key, json.toString());
-            if (mEnableLog) {
-                Log.d(TAG, key + ":: " + json.toString());
-            }
-        } catch (final JSONException ex) {
-            throw new Error(ex);
-        }
-        return mInstance;
+    public SimpleSharedPreferences put(PrefKey.StringSetKey key, Set<String> value) {
+        return putStringSet(key.name, value);
     }
 
-    @Override
-    public SimpleSharedPreferences putInt(String key, int value) {
-        mEditor.putInt(key, value);
-        commit();
-        return mInstance;
+    public SimpleSharedPreferences put(PrefKey.IntKey key, int value) {
+        return putInt(key.name, value);
     }
 
-    @Override
-    public SimpleSharedPreferences putLong(String key, long value) {
-        mEditor.putLong(key, value);
-        commit();
-        return mInstance;
+    public SimpleSharedPreferences put(PrefKey.LongKey key, long value) {
+        return putLong(key.name, value);
     }
 
-    @Override
-    public SimpleSharedPreferences putFloat(String key, float value) {
-        mEditor.putFloat(key, value);
-        commit();
-        return mInstance;
+    public SimpleSharedPreferences put(PrefKey.FloatKey key, float value) {
+        return putFloat(key.name, value);
     }
 
-    @Override
-    public SimpleSharedPreferences putBoolean(String key, boolean value) {
-        mEditor.putBoolean(key, value);
-        commit();
-        return mInstance;
+    public SimpleSharedPreferences put(PrefKey.BooleanKey key, boolean value) {
+        return putBoolean(key.name, value);
     }
 
-    @Override
-    public SimpleSharedPreferences remove(String key) {
-        mEditor.remove(key);
-        commit();
-        return mInstance;
+    public SimpleSharedPreferences remove(PrefKey<?> key) {
+        return remove(key.name);
+    }
+
+    public boolean contains(PrefKey<?> key) {
+        return contains(key.name);
     }
 
     @Override
-    public SimpleSharedPreferences clear() {
-        mEditor.clear();
-        commit();
-        return mInstance;
+    public boolean contains(String key) {
+        return !isExpired(key) && isStored(key);
     }
 
     /**
-     * <h1><u>Do not use this method</u></h1> <br>
+     * @return true if the key has a value, even if expired.
      */
-    @Deprecated
-    @Override
-    public boolean commit() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
-            apply();
+    private boolean isStored(String key) {
+        if (!mCounters.isEmpty() && mCounters.containsKey(key)) {
             return true;
         }
-        return mEditor.commit();
+        final Object pending = getPending(key);
+        if (pending != NOT_PENDING) {
+            return pending != REMOVED;
+        }
+        return getPreferences().contains(key);
     }
 
-    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    /**
+     * <h1><u>Do not use this method</u></h1> <br>
+     */
+    @Deprecated
     @Override
-    public void apply() throws NoSuchMethodError {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
-            mEditor.apply();
-        } else {
-            mEditor.commit();
-        }
+    public Editor edit() {
+        return getPreferences().edit();
     }
 
-    @Override
-    public Map<String, ?> getAll() throws ClassCastException {
-        return mSharedPreferences.getAll();
+    /**
+     * Reads the value without blocking the calling thread, even while {@link #initializeAsync(Application)} is loading.
+     * <p/>
+     * <pre>
+     * mPreferences.getIntAsync(KEY, 0, AbstractPreferences.MAIN_THREAD, new PreferenceCallback&lt;Integer&gt;() {
+     *     public void onResult(Integer value) {
+     *         ...
+     *     }
+     *
+     *     public void onError(Throwable error) {
+     *         ...
+     *     }
+     * });
+     * </pre>
+     *
+     * @param executor runs the <b>callback</b>.
+     * @param callback receives the value, may be null to use only the returned {@link Future}.
+     * @return The value, or the {@link ClassCastException} as an {@link ExecutionException},
+     * also passed to {@link PreferenceCallback#onError(Throwable)}.
+     */
+    public Future<Integer> getIntAsync(final String key, final int defValue, Executor executor,
+                                       PreferenceCallback<? super Integer> callback) {
+        return readAsync(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return getInt(key, defValue);
+            }
+        }, executor, callback);
     }
 
-    @Override
-    public String getString(String key, String defValue) throws ClassCastException {
-        try {
-            return mSharedPreferences.getString(key, defValue);
-        } catch (final ClassCastException e) {
-            final String returnType = new Object() {
-            }.getClass().getEnclosingMethod().getReturnType().toString();
-            throw new ClassCastException(getDetailMessage(key, returnType));
-        }
+    /**
+     * @see #getIntAsync(String, int, Executor, PreferenceCallback)
+     */
+    public Future<Long> getLongAsync(final String key, final long defValue, Executor executor,
+                                     PreferenceCallback<? super Long> callback) {
+        return readAsync(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return getLong(key, defValue);
+            }
+        }, executor, callback);
     }
 
-    @Override
-    public Set<String> getStringSet(String key, Set<String> defValues) throws ClassCastException {
-        final String jsonPref = getString(key, null);
+    /**
+     * @see #getIntAsync(String, int, Executor, PreferenceCallback)
+     */
+    public Future<Float> getFloatAsync(final String key, final float defValue, Executor executor,
+                                       PreferenceCallback<? super Float> callback) {
+        return readAsync(new Callable<Float>() {
+            @Override
+            public Float call() {
+                return getFloat(key, defValue);
+            }
+        }, executor, callback);
+    }
 
-        if (jsonPref == null) {
-            return defValues;
-        }
+    /**
+     * @see #getIntAsync(String, int, Executor, PreferenceCallback)
+     */
+    public Future<Boolean> getBooleanAsync(final String key, final boolean defValue, Executor executor,
+                                           PreferenceCallback<? super Boolean> callback) {
+        return readAsync(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return getBoolean(key, defValue);
+            }
+        }, executor, callback);
+    }
 
-        final List<String> prefValues = new ArrayList<String>();
+    /**
+     * @see #getIntAsync(String, int, Executor, PreferenceCallback)
+     */
+    public Future<String> getStringAsync(final String key, final String defValue, Executor executor,
+                                         PreferenceCallback<? super String> callback) {
+        return readAsync(new Callable<String>() {
+            @Override
+            public String call() {
+                return getString(key, defValue);
+            }
+        }, executor, callback);
+    }
 
-        try {
-            final JSONArray mJsonArray = new JSONObject(jsonPref).getJSONArray(key);
-            for (int i = 0; i < mJsonArray.length(); i++) {
-                prefValues.add(mJsonArray.getString(i));
+    /**
+     * @see #getIntAsync(String, int, Executor, PreferenceCallback)
+     */
+    public Future<Set<String>> getStringSetAsync(final String key, final Set<String> defValues, Executor executor,
+                                                 PreferenceCallback<? super Set<String>> callback) {
+        return readAsync(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() {
+                return getStringSet(key, defValues);
             }
-        } catch (final JSONException ex) {
-            if (mEnableLog) {
-                Log.d(TAG, ex.getLocalizedMessage(), ex);
+        }, executor, callback);
+    }
+
+    /**
+     * @see #getIntAsync(String, int, Executor, PreferenceCallback)
+     */
+    public Future<Map<String, ?>> getAllAsync(Executor executor, PreferenceCallback<? super Map<String, ?>> callback) {
+        return readAsync(new Callable<Map<String, ?>>() {
+            @Override
+            public Map<String, ?> call() {
+                return getAll();
             }
-        }
+        }, executor, callback);
+    }
 
-        try {
-            return new HashSet<String>(prefValues);
-        } catch (final ClassCastException e) {
-            final String returnType = new Object() {
-            }.getClass().getEnclosingMethod().getReturnType().toString();
-            throw new ClassCastException(getDetailMessage(key, returnType));
-        } catch (final Exception ex) {
-            if (mEnableLog) {
-                Log.d(TAG, ex.getLocalizedMessage(), ex);
+    /**
+     * @see #getIntAsync(String, int, Executor, PreferenceCallback)
+     */
+    public <T> Future<T> getAsync(final PrefKey<T> key, Executor executor, PreferenceCallback<? super T> callback) {
+        return readAsync(new Callable<T>() {
+            @Override
+            public T call() {
+                return key.read(SimpleSharedPreferences.this);
             }
-            return defValues;
+        }, executor, callback);
+    }
+
+    private <T> Future<T> readAsync(Callable<T> read, final Executor executor,
+                                    final PreferenceCallback<? super T> callback) {
+        if (executor == null) {
+            throw new NullPointerException("Executor cannot be null");
         }
+        final FutureTask<T> task = new FutureTask<T>(read) {
+            @Override
+            protected void done() {
+                if (callback == null || isCancelled()) {
+                    return;
+                }
+                final T value;
+                try {
+                    value = get();
+                } catch (final ExecutionException e) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onError(e.getCause());
+                        }
+                    });
+                    return;
+                } catch (final InterruptedException e) {
+                    // Not possible, the task is done.
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResult(value);
+                    }
+                });
+            }
+        };
+        whenReady(task);
+        return task;
     }
 
+    /**
+     * Notified of every change, prefer {@link #registerListener(String, OnKeyChangeListener)}
+     * to listen to specific keys.
+     */
     @Override
-    public int getInt(String key, int defValue) throws ClassCastException {
-        try {
-            return mSharedPreferences.getInt(key, defValue);
-        } catch (final ClassCastException e) {
-            final String returnType = new Object() {
-            }.getClass().getEnclosingMethod().getReturnType().toString();
-            throw new ClassCastException(getDetailMessage(key, returnType));
-        }
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        getPreferences().registerOnSharedPreferenceChangeListener(listener);
     }
 
     @Override
-    public long getLong(String key, long defValue) throws ClassCastException {
-        try {
-            return mSharedPreferences.getLong(key, defValue);
-        } catch (final ClassCastException e) {
-            final String returnType = new Object() {
-            }.getClass().getEnclosingMethod().getReturnType().toString();
-            throw new ClassCastException(getDetailMessage(key, returnType));
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        getPreferences().unregisterOnSharedPreferenceChangeListener(listener);
+    }
+
+    /**
+     * Listens to changes of one key, the new value is passed to the listener.
+     * The listener is held weakly.
+     *
+     * @param key      key to listen to.
+     * @param listener called with the new value, the default value of the key if removed.
+     * @see #unregisterListener(OnKeyChangeListener)
+     */
+    public <T> SimpleSharedPreferences registerListener(PrefKey<T> key, OnKeyChangeListener<? super T> listener) {
+        checkListener(listener);
+        mListeners.add(key.name, false, key, listener, true);
+        return this;
+    }
+
+    /**
+     * Listens to changes of one key, the new value is passed to the listener.
+     * The listener is held weakly.
+     *
+     * @param key      key to listen to.
+     * @param listener called with the new value, null if removed.
+     * @see #unregisterListener(OnKeyChangeListener)
+     */
+    public SimpleSharedPreferences registerListener(String key, OnKeyChangeListener<Object> listener) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
         }
+        checkListener(listener);
+        mListeners.add(key, false, null, listener, true);
+        return this;
     }
 
-    @Override
-    public float getFloat(String key, float defValue) throws ClassCastException {
-        try {
-            return mSharedPreferences.getFloat(key, defValue);
-        } catch (final ClassCastException e) {
-            final String returnType = new Object() {
-            }.getClass().getEnclosingMethod().getReturnType().toString();
-            throw new ClassCastException(getDetailMessage(key, returnType));
+    /**
+     * Listens to changes of all keys starting with <b>prefix</b>, e.g. <code>"settings."</code>.
+     * The listener is held weakly.
+     *
+     * @param prefix   start of the keys to listen to.
+     * @param listener called with the changed key & the new value, null if removed.
+     * @see #unregisterListener(OnKeyChangeListener)
+     */
+    public SimpleSharedPreferences registerPrefixListener(String prefix, OnKeyChangeListener<Object> listener) {
+        if (prefix == null) {
+            throw new NullPointerException("Prefix cannot be null");
         }
+        checkListener(listener);
+        mListeners.add(prefix, true, null, listener, true);
+        return this;
     }
 
-    @Override
-    public boolean getBoolean(String key, boolean defValue) throws ClassCastException {
-        try {
-            return mSharedPreferences.getBoolean(key, defValue);
-        } catch (final ClassCastException e) {
-            final String returnType = new Object() {
-            }.getClass().getEnclosingMethod().getReturnType().toString();
-            throw new ClassCastException(getDetailMessage(key, returnType));
+    /**
+     * Registers a listener which is only told that the key changed, with a null value.
+     */
+    void registerChangeSignal(String key, OnKeyChangeListener<?> listener) {
+        mListeners.add(key, false, null, listener, false);
+    }
+
+    /**
+     * Removes the listener from all keys & prefixes it was registered with.
+     */
+    public SimpleSharedPreferences unregisterListener(OnKeyChangeListener<?> listener) {
+        checkListener(listener);
+        mListeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * Same as {@link #observe(PrefKey, long, Executor)}, coalescing changes within a frame (16ms)
+     * & emitting on the main thread.
+     */
+    public <T> PreferenceObservable<T> observe(PrefKey<T> key) {
+        return observe(key, 16, AbstractPreferences.MAIN_THREAD);
+    }
+
+    /**
+     * Observes the values of a key, a burst of writes results in a single emission.
+     *
+     * @param key          key to observe.
+     * @param windowMillis changes within this time, from the first change, are emitted once.
+     * @param executor     runs the {@link PreferenceObservable.Observer}s.
+     * @return A cold stream, each subscriber first receives the current value. Equal values are not repeated.
+     */
+    public <T> PreferenceObservable<T> observe(PrefKey<T> key, long windowMillis, Executor executor) {
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("Executor cannot be null");
         }
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("windowMillis cannot be negative");
+        }
+        return new PreferenceObservable<T>(this, key, windowMillis, executor);
     }
 
-    private String getDetailMessage(String key, String returnType) {
-        return "\n ======================================== \n"
-                + "ClassCastException : " + key + "'s value is not a "
-                + returnType + " \n ======================================== \n";
+    private static void checkListener(OnKeyChangeListener<?> listener) {
+        if (listener == null) {
+            throw new NullPointerException("Listener cannot be null");
+        }
     }
 
-    @Override
-    public boolean contains(String key) {
-        return mSharedPreferences.contains(key);
+    /**
+     * Notifies the listeners of the key, or of all keys if <b>key</b> is null.
+     */
+    private void dispatch(String key) {
+        if (key == null) {
+            for (final String changed : mListeners.keys()) {
+                notify(mListeners.match(changed), changed);
+            }
+            notify(mListeners.prefixed(), null);
+            return;
+        }
+        notify(mListeners.match(key), key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notify(List<ListenerRegistry.Subscription> subscriptions, String key) {
+        Object value = NOT_PENDING;
+        for (final ListenerRegistry.Subscription subscription : subscriptions) {
+            final OnKeyChangeListener<Object> listener = (OnKeyChangeListener<Object>) subscription.get();
+            if (listener == null) {
+                continue;
+            }
+            if (!subscription.withValue) {
+                listener.onKeyChanged(key, null);
+                continue;
+            }
+            if (subscription.typedKey != null) {
+                try {
+                    listener.onKeyChanged(key, subscription.typedKey.read(this));
+                } catch (final ClassCastException e) {
+                    Log.w(TAG, "Not notified, " + e.getMessage());
+                }
+                continue;
+            }
+            if (value == NOT_PENDING) {
+                value = key == null ? null : peek(key);
+            }
+            listener.onKeyChanged(key, value);
+        }
     }
 
     /**
-     * <h1><u>Do not use this method</u></h1> <br>
+     * @return The current value of the key without a type, null if absent.
      */
-    @Deprecated
-    @Override
-    public Editor edit() {
-        return mEditor;
+    private Object peek(String key) {
+        if (isExpired(key)) {
+            return null;
+        }
+        final Counter counter = mCounters.isEmpty() ? null : mCounters.get(key);
+        if (counter != null) {
+            final long value = counter.value.get();
+            return counter.type == PrimitiveIndex.INT ? (Object) (int) value : (Object) value;
+        }
+        final Object pending = getPending(key);
+        if (pending != NOT_PENDING) {
+            return pending == REMOVED ? null : pending;
+        }
+        final SharedPreferences preferences = getPreferences();
+        final Object value = preferences instanceof AbstractPreferences
+                ? ((AbstractPreferences) preferences).read(key) : preferences.getAll().get(key);
+        return value instanceof String ? decompress(key, (String) value) : value;
     }
 
-    @Override
-    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
-        mSharedPreferences.registerOnSharedPreferenceChangeListener(listener);
+    /**
+     * Editor & number of writes of a thread's batch.
+     */
+    private static final class Batch {
+        final Editor editor;
+        int depth = 1;
+        int writes;
+        /**
+         * True if the index of expiries changed.
+         */
+        boolean expiries;
+
+        Batch(Editor editor) {
+            this.editor = editor;
+        }
     }
 
-    @Override
-    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
-        mSharedPreferences.registerOnSharedPreferenceChangeListener(listener);
+    /**
+     * Value of a counter, <b>dirty</b> till written.
+     */
+    private static final class Counter {
+        final byte type;
+        final AtomicLong value;
+        volatile boolean dirty;
+
+        Counter(byte type, long value) {
+            this.type = type;
+            this.value = new AtomicLong(value);
+        }
     }
 
     /**
      * Holds Constants for Keys
      */
-    class KEYS {
+    static class KEYS {
         /**
          * The Constant Key for App Opened Count.
          */
         final static String OPENED_TIMES_COUNT = "VEE_APP_OPENED_TIMES_COUNT";
+
+        /**
+         * Typed {@link #OPENED_TIMES_COUNT}.
+         */
+        final static PrefKey.IntKey OPENED_TIMES_COUNT_KEY = new PrefKey.IntKey(OPENED_TIMES_COUNT, 0);
+
+        /**
+         * Index of the keys written with a ttl & their expiry times.
+         */
+        final static String EXPIRIES = "VEE_EXPIRIES";
+
+        /**
+         * Prefix of the expiry time of a key, used instead of {@link #EXPIRIES} by multi-process stores.
+         */
+        final static String EXPIRY_PREFIX = "VEE_EXPIRY_";
+
+        /**
+         * Keys read at startup, see {@link #enableStartupProfile(long)}.
+         */
+        final static String STARTUP_PROFILE = "VEE_STARTUP_PROFILE";
     }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses large Strings, stored as <code>~ssp:z:&lt;UTF-8 length&gt;:&lt;Base64 of the deflated UTF-8&gt;</code>.
+ * <p/>
+ * A value which already starts with {@link #PREFIX} is always compressed, so that it is never mistaken for
+ * a compressed value. Decompressed values are cached while the stored value is the same instance.
+ */
+final class StringCompressor {
+
+    static final String PREFIX = "~ssp:z:";
+    /**
+     * Maximum expansion of deflate, a longer stored length is corrupt.
+     */
+    private static final int MAX_RATIO = 1032;
+    private static final String UTF_8 = "UTF-8";
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < BASE64_VALUES.length; i++) {
+            BASE64_VALUES[i] = -1;
+        }
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_VALUES[BASE64[i]] = i;
+        }
+    }
+
+    private final Map<String, Decompressed> mCache = new LinkedHashMap<String, Decompressed>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Decompressed> eldest) {
+            return size() > mMaxSize;
+        }
+    };
+    private final int mMaxSize;
+
+    StringCompressor(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    static boolean isCompressed(String value) {
+        return value.startsWith(PREFIX);
+    }
+
+    /**
+     * @return The decompressed value of the key, cached while <b>stored</b> is not replaced.
+     * @throws IllegalArgumentException if <b>stored</b> is not a valid compressed value.
+     */
+    String decompress(String key, String stored) {
+        synchronized (mCache) {
+            final Decompressed cached = mCache.get(key);
+            if (cached != null && cached.stored == stored) {
+                return cached.value;
+            }
+        }
+        final String value = decompress(stored);
+        synchronized (mCache) {
+            mCache.put(key, new Decompressed(stored, value));
+        }
+        return value;
+    }
+
+    static String compress(String value) {
+        final byte[] bytes = utf8(value);
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] buffer = new byte[bytes.length / 2 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    final byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    buffer = grown;
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            final StringBuilder builder = new StringBuilder(PREFIX.length() + 12 + (length + 2) / 3 * 4)
+                    .append(PREFIX).append(bytes.length).append(':');
+            return encodeBase64(builder, buffer, length).toString();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if <b>stored</b> is not a valid compressed value.
+     */
+    static String decompress(String stored) {
+        final int separator = stored.indexOf(':', PREFIX.length());
+        if (separator < 0) {
+            throw new IllegalArgumentException("Missing length");
+        }
+        final int utf8Length;
+        try {
+            utf8Length = Integer.parseInt(stored.substring(PREFIX.length(), separator));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid length", e);
+        }
+        // Raw deflate needs an extra dummy byte, see Inflater(boolean).
+        final byte[] deflated = decodeBase64(stored, separator + 1, 1);
+        if (utf8Length < 0 || utf8Length > (long) (deflated.length - 1) * MAX_RATIO) {
+            throw new IllegalArgumentException("Invalid length " + utf8Length);
+        }
+        final byte[] bytes = new byte[utf8Length];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(deflated);
+            int length = 0;
+            while (length < bytes.length) {
+                final int inflated = inflater.inflate(bytes, length, bytes.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.finished())) {
+                    throw new IllegalArgumentException("Truncated value");
+                }
+                length += inflated;
+            }
+            return new String(bytes, UTF_8);
+        } catch (final DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt value", e);
+        } catch (final UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes(UTF_8);
+        } catch (final UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Appends the bytes in Base64, without padding.
+     */
+    private static StringBuilder encodeBase64(StringBuilder builder, byte[] bytes, int length) {
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            final int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | bytes[i + 2] & 0xFF;
+            builder.append(BASE64[bits >>> 18]).append(BASE64[bits >>> 12 & 63])
+                    .append(BASE64[bits >>> 6 & 63]).append(BASE64[bits & 63]);
+        }
+        if (length - i == 1) {
+            final int bits = (bytes[i] & 0xFF) << 16;
+            builder.append(BASE64[bits >>> 18]).append(BASE64[bits >>> 12 & 63]);
+        } else if (length - i == 2) {
+            final int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8;
+            builder.append(BASE64[bits >>> 18]).append(BASE64[bits >>> 12 & 63]).append(BASE64[bits >>> 6 & 63]);
+        }
+        return builder;
+    }
+
+    /**
+     * @param extra number of zero bytes after the decoded bytes.
+     */
+    private static byte[] decodeBase64(String value, int start, int extra) {
+        final int chars = value.length() - start;
+        if (chars % 4 == 1) {
+            throw new IllegalArgumentException("Invalid Base64 length");
+        }
+        final byte[] bytes = new byte[chars * 3 / 4 + extra];
+        int bits = 0;
+        int count = 0;
+        int length = 0;
+        for (int i = start; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final int digit = c < 128 ? BASE64_VALUES[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid Base64 character " + c);
+            }
+            bits = bits << 6 | digit;
+            if (++count == 4) {
+                bytes[length++] = (byte) (bits >> 16);
+                bytes[length++] = (byte) (bits >> 8);
+                bytes[length++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 3) {
+            bytes[length++] = (byte) (bits >> 10);
+            bytes[length] = (byte) (bits >> 2);
+        } else if (count == 2) {
+            bytes[length] = (byte) (bits >> 4);
+        }
+        return bytes;
+    }
+
+    private static final class Decompressed {
+        final String stored;
+        final String value;
+
+        Decompressed(String stored, String value) {
+            this.stored = stored;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LRU cache of decoded String sets.<br>
+ * An entry is valid only while the raw value stored in {@link android.content.SharedPreferences}
+ * is the same instance it was decoded from.
+ */
+final class StringSetCache {
+
+    private final Map<String, CachedSet> mEntries = new LinkedHashMap<String, CachedSet>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSet> eldest) {
+            return size() > mMaxSize;
+        }
+    };
+    private int mMaxSize;
+
+    StringSetCache(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return The cached values of the key if they were decoded from <b>raw</b>, else null.
+     */
+    synchronized Set<String> get(String key, Object raw) {
+        final CachedSet entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.raw != raw) {
+            mEntries.remove(key);
+            return null;
+        }
+        return entry.values;
+    }
+
+    /**
+     * @return An unmodifiable view of <b>values</b>, which is now cached.
+     */
+    synchronized Set<String> put(String key, Object raw, Set<String> values) {
+        final Set<String> view = Collections.unmodifiableSet(values);
+        if (mMaxSize > 0) {
+            mEntries.put(key, new CachedSet(raw, view));
+        }
+        return view;
+    }
+
+    synchronized void invalidate(String key) {
+        mEntries.remove(key);
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        if (maxSize == 0) {
+            mEntries.clear();
+            return;
+        }
+        final Iterator<String> keys = mEntries.keySet().iterator();
+        while (mEntries.size() > maxSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static final class CachedSet {
+        final Object raw;
+        final Set<String> values;
+
+        CachedSet(Object raw, Set<String> values) {
+            this.raw = raw;
+            this.values = values;
+        }
+    }
+}
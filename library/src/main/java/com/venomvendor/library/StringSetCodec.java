@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.util.Set;
+
+/**
+ * Converts a {@code Set<String>} to the value stored in {@link android.content.SharedPreferences} & back.<br>
+ * Built-in codecs are in {@link StringSetCodecs}.
+ *
+ * @see SimpleSharedPreferences#setStringSetCodec(StringSetCodec)
+ */
+public interface StringSetCodec {
+
+    /**
+     * @param key    key of the preference.
+     * @param values values to be stored.
+     * @return Either a {@link String} or a {@code Set<String>} to be stored for the key.
+     */
+    Object encode(String key, Set<String> values);
+
+    /**
+     * @param key    key of the preference.
+     * @param stored {@link String} or {@code Set<String>} stored for the key, never null.
+     * @return The decoded values, or null if <b>stored</b> is not a String set.
+     */
+    Set<String> decode(String key, Object stored);
+}
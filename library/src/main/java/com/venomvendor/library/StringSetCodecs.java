@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.os.Build;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Built-in {@link StringSetCodec}s.<br>
+ * Every codec decodes all the formats below, so values written by older versions are read transparently.
+ * <ul>
+ * <li>{@link #NATIVE} stores the set as is, using {@link android.content.SharedPreferences.Editor#putStringSet}.</li>
+ * <li>{@link #COMPACT} stores a length-prefixed String, <code>~ssp:set:3:one3:two5:three</code></li>
+ * <li>{@link #JSON} stores <code>{"key":["one","two","three"]}</code>, used till version 2.0.0</li>
+ * </ul>
+ */
+public final class StringSetCodecs {
+
+    /**
+     * Prefix of values written by {@link #COMPACT}.
+     */
+    static final String COMPACT_PREFIX = "~ssp:set:";
+
+    /**
+     * Stores the set natively, available from API-11.
+     */
+    public static final StringSetCodec NATIVE = new StringSetCodec() {
+        @Override
+        public Object encode(String key, Set<String> values) {
+            return new HashSet<String>(values);
+        }
+
+        @Override
+        public Set<String> decode(String key, Object stored) {
+            return decodeAny(key, stored);
+        }
+    };
+
+    /**
+     * Stores the set as a length-prefixed String, works on all API levels.
+     */
+    public static final StringSetCodec COMPACT = new StringSetCodec() {
+        @Override
+        public Object encode(String key, Set<String> values) {
+            return encodeCompact(values);
+        }
+
+        @Override
+        public Set<String> decode(String key, Object stored) {
+            return decodeAny(key, stored);
+        }
+    };
+
+    /**
+     * Legacy format, stores the set as a JSON String.
+     */
+    public static final StringSetCodec JSON = new StringSetCodec() {
+        @Override
+        public Object encode(String key, Set<String> values) {
+            final JSONArray jArray = new JSONArray();
+            for (final String value : values) {
+                jArray.put(value);
+            }
+            try {
+                return new JSONObject().put(key, jArray).toString();
+            } catch (final JSONException ex) {
+                throw new Error(ex);
+            }
+        }
+
+        @Override
+        public Set<String> decode(String key, Object stored) {
+            return decodeAny(key, stored);
+        }
+    };
+
+    private StringSetCodecs() {
+    }
+
+    /**
+     * @return {@link #NATIVE} from API-11, else {@link #COMPACT}.
+     */
+    public static StringSetCodec platformDefault() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return NATIVE;
+        }
+        return COMPACT;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<String> decodeAny(String key, Object stored) {
+        if (stored instanceof Set) {
+            return new HashSet<String>((Set<String>) stored);
+        }
+        if (!(stored instanceof String)) {
+            return null;
+        }
+        final String value = (String) stored;
+        if (value.startsWith(COMPACT_PREFIX)) {
+            return decodeCompact(value);
+        }
+        if (value.startsWith("{")) {
+            return decodeJson(key, value);
+        }
+        return null;
+    }
+
+    static String encodeCompact(Set<String> values) {
+        int length = COMPACT_PREFIX.length();
+        for (final String value : values) {
+            length += value == null ? 3 : value.length() + 4;
+        }
+        final StringBuilder builder = new StringBuilder(length).append(COMPACT_PREFIX);
+        for (final String value : values) {
+            if (value == null) {
+                builder.append("-1:");
+            } else {
+                builder.append(value.length()).append(':').append(value);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The decoded values, null if malformed.
+     */
+    static Set<String> decodeCompact(String value) {
+        final Set<String> values = new HashSet<String>();
+        final int end = value.length();
+        int index = COMPACT_PREFIX.length();
+        while (index < end) {
+            final boolean isNull = value.charAt(index) == '-';
+            if (isNull) {
+                index++;
+            }
+            int length = 0;
+            char digit;
+            while (index < end && (digit = value.charAt(index++)) != ':') {
+                if (digit < '0' || digit > '9' || length > (end - index) / 10) {
+                    // Also rejects a length longer than the value, before it could overflow.
+                    return null;
+                }
+                length = length * 10 + (digit - '0');
+            }
+            if (isNull) {
+                values.add(null);
+                continue;
+            }
+            if (index + length > end) {
+                return null;
+            }
+            values.add(value.substring(index, index + length));
+            index += length;
+        }
+        return values;
+    }
+
+    private static Set<String> decodeJson(String key, String value) {
+        try {
+            final JSONArray jArray = new JSONObject(value).getJSONArray(key);
+            final Set<String> values = new HashSet<String>(jArray.length());
+            for (int i = 0; i < jArray.length(); i++) {
+                values.add(jArray.getString(i));
+            }
+            return values;
+        } catch (final JSONException ex) {
+            return null;
+        }
+    }
+}
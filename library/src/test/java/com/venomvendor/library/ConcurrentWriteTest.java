@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Writes from many threads at once, checks that none is lost or torn.
+ */
+public class ConcurrentWriteTest {
+
+    private static final int THREADS = 8;
+    private static final int WRITES = 500;
+
+    @Test
+    public void concurrentWrites() throws Exception {
+        stress(SimpleSharedPreferences.wrap(new MemoryPreferences()));
+    }
+
+    @Test
+    public void concurrentWritesBehind() throws Exception {
+        final MemoryPreferences stored = new MemoryPreferences();
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(stored);
+        preferences.enableWriteBehind(5, 64);
+        stress(preferences);
+        preferences.flushNow();
+        // Reads only what reached the store.
+        final SimpleSharedPreferences reloaded = SimpleSharedPreferences.wrap(stored);
+        assertEquals(THREADS * WRITES, reloaded.getLong("counter", 0));
+        assertWritten(reloaded);
+    }
+
+    private static void stress(final SimpleSharedPreferences preferences) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < WRITES; i++) {
+                            preferences.putInt("int-" + thread + "-" + i, i);
+                            preferences.putString("string-" + thread + "-" + i, thread + ":" + i);
+                            preferences.increment("counter", 1);
+                            // Both keys of a pair are written by one batch, a torn batch shows different values.
+                            final long pair = (long) thread * WRITES + i;
+                            preferences.beginBatch();
+                            preferences.putLong("pair-a", pair);
+                            preferences.putLong("pair-b", pair);
+                            preferences.endBatch();
+                            final PreferenceSnapshot snapshot = preferences.snapshot("pair-a", "pair-b");
+                            assertEquals(snapshot.getLong("pair-a", -1), snapshot.getLong("pair-b", -2));
+                        }
+                    } catch (final Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertEquals(THREADS * WRITES, preferences.getLong("counter", 0));
+        assertWritten(preferences);
+    }
+
+    private static void assertWritten(SimpleSharedPreferences preferences) {
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < WRITES; i++) {
+                assertEquals(i, preferences.getInt("int-" + thread + "-" + i, -1));
+                assertEquals(thread + ":" + i, preferences.getString("string-" + thread + "-" + i, null));
+            }
+        }
+        assertEquals(preferences.getLong("pair-a", -1), preferences.getLong("pair-b", -2));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Logs left by a crash, or corrupted.
+ */
+public class LogPreferencesTest {
+
+    private File mDirectory;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("log", "");
+        assertTrue(mDirectory.delete() && mDirectory.mkdir());
+        mFile = new File(mDirectory, "preferences.log");
+    }
+
+    @After
+    public void tearDown() {
+        for (final File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void partialHeaderIsEmpty() throws IOException {
+        write(new byte[]{0x53, 0x53, 0x50});
+        assertWritable();
+    }
+
+    @Test
+    public void unwrittenHeaderIsEmpty() throws IOException {
+        write(new byte[LogPreferences.HEADER_LENGTH + 3]);
+        assertWritable();
+    }
+
+    @Test
+    public void oversizedRecordIsTorn() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(LogPreferences.MAGIC);
+        out.writeInt(LogPreferences.VERSION);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(0);
+        write(bytes.toByteArray());
+        assertWritable();
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void assertWritable() {
+        final LogPreferences preferences = new LogPreferences(mFile, 0, AbstractPreferences.CALLING_THREAD);
+        assertTrue(preferences.getAll().isEmpty());
+        assertTrue(preferences.edit().putInt("key", 1).commit());
+        final LogPreferences reloaded = new LogPreferences(mFile, 0, AbstractPreferences.CALLING_THREAD);
+        assertEquals(1, reloaded.getInt("key", 0));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decoded Strings & String sets of the mapped file, & its header.
+ */
+public class MappedPreferencesTest {
+
+    private File mFile;
+    private MappedPreferences mPreferences;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("mapped", ".map");
+        assertTrue(mFile.delete());
+        mPreferences = new MappedPreferences(mFile, AbstractPreferences.CALLING_THREAD);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp0").delete();
+        new File(mFile.getPath() + ".tmp1").delete();
+    }
+
+    @Test
+    public void rebuildIsPublishedByCommit() throws IOException {
+        mPreferences.edit().putString("before", "value").commit();
+        mPreferences.edit().clear().putString("string", "value").commit();
+        final MappedPreferences reopened = new MappedPreferences(mFile, AbstractPreferences.CALLING_THREAD);
+        assertEquals("value", reopened.getString("string", null));
+        assertFalse(reopened.contains("before"));
+    }
+
+    @Test
+    public void corruptHeaderIsCleared() throws IOException {
+        mPreferences.edit().putString("string", "value").commit();
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            // Slot count, not a power of two.
+            file.seek(8);
+            file.writeInt(3);
+        } finally {
+            file.close();
+        }
+        final MappedPreferences reopened = new MappedPreferences(mFile, AbstractPreferences.CALLING_THREAD);
+        assertTrue(reopened.getAll().isEmpty());
+        assertTrue(reopened.edit().putString("string", "again").commit());
+        assertEquals("again", new MappedPreferences(mFile, AbstractPreferences.CALLING_THREAD).getString("string", null));
+    }
+
+    @Test
+    public void unchangedValueIsDecodedOnce() {
+        final Set<String> values = new HashSet<String>(Arrays.asList("a", "b"));
+        mPreferences.edit().putString("string", "value").putStringSet("set", values).commit();
+        assertSame(mPreferences.getString("string", null), mPreferences.getString("string", null));
+        assertSame(mPreferences.getStringSet("set", null), mPreferences.getStringSet("set", null));
+        assertEquals(values, mPreferences.getStringSet("set", null));
+    }
+
+    @Test
+    public void writeInvalidates() {
+        mPreferences.edit().putString("string", "one").commit();
+        final String first = mPreferences.getString("string", null);
+        // Same size, updated in place.
+        mPreferences.edit().putString("string", "two").commit();
+        assertEquals("two", mPreferences.getString("string", null));
+        mPreferences.edit().remove("string").commit();
+        assertEquals("default", mPreferences.getString("string", "default"));
+        mPreferences.edit().putString("string", "one").commit();
+        assertNotSame(first, mPreferences.getString("string", null));
+    }
+
+    @Test
+    public void stringSetCacheHits() {
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(mPreferences);
+        preferences.setStringSetCodec(StringSetCodecs.COMPACT);
+        preferences.putStringSet("set", new HashSet<String>(Arrays.asList("a", "b")));
+        assertSame(preferences.getStringSet("set", null), preferences.getStringSet("set", null));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void wrongTypeThrows() {
+        mPreferences.edit().putInt("int", 1).commit();
+        mPreferences.getString("int", null);
+    }
+}
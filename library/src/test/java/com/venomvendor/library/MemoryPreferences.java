@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link AbstractPreferences} kept only in memory, listeners run on the writing thread.
+ */
+class MemoryPreferences extends AbstractPreferences {
+
+    private final Map<String, Object> mMap = new HashMap<String, Object>();
+    private int mDiskWrites;
+
+    MemoryPreferences() {
+        super(CALLING_THREAD);
+    }
+
+    /**
+     * @return The number of writes which reached {@link #writeToDisk(Map, boolean)}.
+     */
+    synchronized int getDiskWrites() {
+        return mDiskWrites;
+    }
+
+    @Override
+    protected synchronized Object read(String key) {
+        return mMap.get(key);
+    }
+
+    @Override
+    protected synchronized Map<String, ?> readAll() {
+        return new HashMap<String, Object>(mMap);
+    }
+
+    @Override
+    protected synchronized void commitToMemory(Map<String, Object> changes, boolean clear) {
+        LogPreferences.apply(mMap, changes, clear);
+    }
+
+    @Override
+    protected synchronized void writeToDisk(Map<String, Object> changes, boolean clear) {
+        mDiskWrites++;
+    }
+}
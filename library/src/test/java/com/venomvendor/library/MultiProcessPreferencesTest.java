@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two other JVMs write the same files as this one.
+ */
+public class MultiProcessPreferencesTest {
+
+    private static final int WRITES = 200;
+    private static final int MIN_GARBAGE = 64;
+    private static final String EXPIRING = "expiring";
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("multi", "");
+        assertTrue(mDirectory.delete() && mDirectory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        for (final File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void processesShareWritesAndCounters() throws Exception {
+        final MultiProcessPreferences stored = open(mDirectory);
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(stored);
+        final Set<String> notified = Collections.synchronizedSet(new HashSet<String>());
+        stored.registerOnSharedPreferenceChangeListener(new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                notified.add(key);
+            }
+        });
+        preferences.putString("parent", "started");
+
+        final List<Process> writers = new ArrayList<Process>();
+        for (int id = 0; id < 2; id++) {
+            writers.add(start(Integer.toString(id)));
+        }
+        // Interleaves with the writers, the values of each writer only grow.
+        final int[] last = {-1, -1};
+        for (int i = 0; i < WRITES; i++) {
+            preferences.increment("counter", 1);
+            preferences.increment(new PrefKey.IntKey("int counter", 0), 1);
+            preferences.putInt("parent " + i % 8, i);
+            for (int id = 0; id < last.length; id++) {
+                final int value = preferences.getInt("writer " + id, -1);
+                assertTrue(value >= last[id]);
+                last[id] = value;
+            }
+        }
+        for (final Process writer : writers) {
+            assertEquals(0, writer.waitFor());
+        }
+
+        assertEquals(WRITES * 3L, preferences.getLong("counter", 0));
+        assertEquals(WRITES * 3, preferences.getInt("int counter", 0));
+        assertEquals(WRITES - 1, preferences.getInt("writer 0", -1));
+        assertEquals(WRITES - 1, preferences.getInt("writer 1", -1));
+        assertEquals("started", preferences.getString("parent", null));
+        for (int i = WRITES - 8; i < WRITES; i++) {
+            assertEquals(i, preferences.getInt("parent " + i % 8, -1));
+        }
+        assertTrue(notified.contains("writer 0") && notified.contains("writer 1"));
+
+        // A new process loads the same state, possibly compacted.
+        final SimpleSharedPreferences reopened = SimpleSharedPreferences.wrap(open(mDirectory));
+        assertEquals(WRITES * 3L, reopened.getLong("counter", 0));
+        assertEquals(WRITES - 1, reopened.getInt("writer 1", -1));
+    }
+
+    @Test
+    public void expiriesOfOtherProcessesAreRead() throws Exception {
+        final MultiProcessPreferences stored = open(mDirectory);
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(stored);
+        preferences.putString("kept", "value", 1, TimeUnit.HOURS);
+        preferences.putString("rewritten", "value", 300, TimeUnit.MILLISECONDS);
+        assertEquals(0, start(EXPIRING).waitFor());
+
+        assertTrue(preferences.contains("expiring"));
+        assertTrue(stored.contains(SimpleSharedPreferences.KEYS.EXPIRY_PREFIX + "kept"));
+        Thread.sleep(400);
+        assertFalse(preferences.contains("expiring"));
+        assertTrue(preferences.contains("kept"));
+        // Written without a ttl by the other process.
+        assertEquals("again", preferences.getString("rewritten", null));
+    }
+
+    private Process start(String writer) throws IOException {
+        return new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                MultiProcessPreferencesTest.class.getName(), mDirectory.getPath(), writer)
+                .redirectErrorStream(true)
+                .start();
+    }
+
+    private static MultiProcessPreferences open(File directory) throws IOException {
+        return new MultiProcessPreferences(new File(directory, "shared.mlog"), new File(directory, "shared.mlock"),
+                MIN_GARBAGE, AbstractPreferences.CALLING_THREAD);
+    }
+
+    /**
+     * A writer process, exits with 1 if the values of the other writer go back.
+     *
+     * @param args directory of the files & id of the writer, or {@link #EXPIRING}.
+     */
+    public static void main(String[] args) throws IOException {
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(open(new File(args[0])));
+        if (EXPIRING.equals(args[1])) {
+            preferences.putString("expiring", "value", 300, TimeUnit.MILLISECONDS);
+            preferences.putString("rewritten", "again");
+            System.exit(0);
+        }
+        final int id = Integer.parseInt(args[1]);
+        int other = -1;
+        for (int i = 0; i < WRITES; i++) {
+            preferences.putInt("writer " + id, i);
+            preferences.increment("counter", 1);
+            preferences.increment(new PrefKey.IntKey("int counter", 0), 1);
+            final int value = preferences.getInt("writer " + (1 - id), -1);
+            if (value < other) {
+                System.exit(1);
+            }
+            other = value;
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PreferenceObservableTest {
+
+    @Test
+    public void readFailureIsDeliveredToObserver() throws InterruptedException {
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(new MemoryPreferences());
+        final BlockingQueue<Object> emitted = new LinkedBlockingQueue<Object>();
+        final PreferenceObservable<Integer>.Subscription subscription = preferences
+                .observe(new PrefKey.IntKey("count", 0), 0, AbstractPreferences.CALLING_THREAD)
+                .subscribe(new PreferenceObservable.Observer<Integer>() {
+                    @Override
+                    public void onChanged(Integer value) {
+                        emitted.add(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        emitted.add(error);
+                    }
+                });
+        assertEquals(0, emitted.poll(5, TimeUnit.SECONDS));
+        preferences.putString("count", "one");
+        assertTrue(emitted.poll(5, TimeUnit.SECONDS) instanceof ClassCastException);
+        preferences.putInt("count", 0);
+        assertEquals(0, emitted.poll(5, TimeUnit.SECONDS));
+        subscription.unsubscribe();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SimpleSharedPreferencesTest {
+
+    @Test
+    public void writeOfAnotherEditorIsRead() {
+        final MemoryPreferences stored = new MemoryPreferences();
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(stored);
+        preferences.putInt("int", 1).putBoolean("boolean", true);
+        assertEquals(1, preferences.getInt("int", 0));
+        stored.edit().putInt("int", 2).remove("boolean").commit();
+        assertEquals(2, preferences.getInt("int", 0));
+        assertEquals(false, preferences.getBoolean("boolean", false));
+    }
+
+    @Test
+    public void skippedRemoveOfExpiredKeyRemovesIt() throws InterruptedException {
+        final MemoryPreferences stored = new MemoryPreferences();
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(stored).setSkipUnchangedWrites(true);
+        // Holds the scheduler, so that the key is not swept
+        final CountDownLatch sweepable = new CountDownLatch(1);
+        SimpleSharedPreferences.getFlushScheduler().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweepable.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        try {
+            preferences.putString("token", "value", 1, TimeUnit.MILLISECONDS);
+            Thread.sleep(10);
+            assertFalse(preferences.contains("token"));
+            assertTrue(stored.contains("token"));
+            preferences.remove("token");
+            assertFalse(stored.contains("token"));
+        } finally {
+            sweepable.countDown();
+        }
+    }
+
+    @Test
+    public void asyncReadRunsInBackgroundAndReportsErrors() throws InterruptedException {
+        final Thread caller = Thread.currentThread();
+        final SimpleSharedPreferences preferences = SimpleSharedPreferences.wrap(new MemoryPreferences());
+        preferences.putInt("int", 1).putString("string", "value");
+        final BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+        final PreferenceCallback<Integer> callback = new PreferenceCallback<Integer>() {
+            @Override
+            public void onResult(Integer value) {
+                results.add(Thread.currentThread() == caller ? "calling thread" : value);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                results.add(error);
+            }
+        };
+        preferences.getIntAsync("int", 0, AbstractPreferences.CALLING_THREAD, callback);
+        assertEquals(1, results.poll(5, TimeUnit.SECONDS));
+        preferences.getIntAsync("string", 0, AbstractPreferences.CALLING_THREAD, callback);
+        assertTrue(results.poll(5, TimeUnit.SECONDS) instanceof ClassCastException);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StringCompressorTest {
+
+    @Test
+    public void roundTrip() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append('a');
+        }
+        final String value = builder.toString();
+        assertEquals(value, StringCompressor.decompress(StringCompressor.compress(value)));
+        assertEquals("", StringCompressor.decompress(StringCompressor.compress("")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeLengthIsRejected() {
+        StringCompressor.decompress(withLength(-5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lengthAboveDeflateRatioIsRejected() {
+        StringCompressor.decompress(withLength(Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return A compressed value whose stored length is replaced by <b>length</b>.
+     */
+    private static String withLength(int length) {
+        final String compressed = StringCompressor.compress("value");
+        return StringCompressor.PREFIX + length
+                + compressed.substring(compressed.indexOf(':', StringCompressor.PREFIX.length()));
+    }
+}
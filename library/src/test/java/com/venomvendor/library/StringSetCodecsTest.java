@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 VenomVendor <info@VenomVendor.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.venomvendor.library;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StringSetCodecsTest {
+
+    @Test
+    public void compactRoundTrip() {
+        final Set<String> values = new HashSet<String>(Arrays.asList("", "a", "0123456789:", null));
+        assertEquals(values, StringSetCodecs.decodeCompact(StringSetCodecs.encodeCompact(values)));
+    }
+
+    @Test
+    public void overflowingLengthIsMalformed() {
+        assertNull(StringSetCodecs.decodeCompact(StringSetCodecs.COMPACT_PREFIX + "4294967297:a"));
+        assertNull(StringSetCodecs.decodeCompact(StringSetCodecs.COMPACT_PREFIX + "99999999999999999999:a"));
+    }
+}
@@ -2,15 +2,16 @@ package com.venomvendor.sample.simplesharedpreferences;
 
 import android.app.Activity;
 import android.content.SharedPreferences;
-import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.venomvendor.library.OnKeyChangeListener;
 import com.venomvendor.library.SimpleSharedPreferences;
 import com.venomvendor.sample.simplesharedpreferences.utils.Constants.KEYS;
+import com.venomvendor.sample.simplesharedpreferences.utils.Constants.PREF_KEYS;
 
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -23,7 +24,7 @@ public class SimpleSharedPreferencesDemo extends Activity {
     private static final String TAG = SimpleSharedPreferencesDemo.class.getSimpleName();
     private SimpleSharedPreferences mPreferences;
     private TextView mPrefResult;
-    private OnSharedPreferenceChangeListener mPreferenceChangeListener;
+    private OnKeyChangeListener<String> mPreferenceChangeListener;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,22 +48,11 @@ public class SimpleSharedPreferencesDemo extends Activity {
          */
         mPreferences = SimpleSharedPreferences.getInstance();
 
-        mPreferenceChangeListener = new OnSharedPreferenceChangeListener() {
+        mPreferenceChangeListener = new OnKeyChangeListener<String>() {
 
             @Override
-            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-
-                final Map<String, ?> map = sharedPreferences.getAll();
-
-                for (final Entry<String, ?> entry : map.entrySet()) {
-                    final String entryKey = entry.getKey();
-                    final Object value = entry.getValue();
-                    if (entryKey.equalsIgnoreCase(key)) {
-                        Log.d(TAG, "New/Updated Preferences key : " + entryKey + " , " + "value : " + value.toString());
-                        break;
-                    }
-                }
-
+            public void onKeyChanged(String key, String value) {
+                Log.d(TAG, "New/Updated Preferences key : " + key + " , " + "value : " + value);
             }
         };
     }
@@ -79,10 +69,12 @@ public class SimpleSharedPreferencesDemo extends Activity {
          */
         mPreferences.putFloat(KEYS.VEE_FLOAT, 2.3f);
 
-        /* put multiple key value pairs */
-        mPreferences.putInt(KEYS.VEE_INT, 50) /* Put Integer */
+        /* put multiple key value pairs, written to disk once */
+        mPreferences.beginBatch()
+                .putInt(KEYS.VEE_INT, 50) /* Put Integer */
                 .putLong(KEYS.VEE_LONG, 12345678910L) /* Put Long */
-                .putString(KEYS.VEE_STRING, TAG); /* Put String */
+                .putString(KEYS.VEE_STRING, TAG) /* Put String */
+                .endBatch();
 
         /*
          * Create String set
@@ -98,10 +90,10 @@ public class SimpleSharedPreferencesDemo extends Activity {
         mPreferences.putStringSet(KEYS.VEE_STRING_SET, mStringSet);
 
         /*
-         * Called when a shared preference is changed, added, or removed. This may be called even if a preference is set
+         * Called when the String is changed, added, or removed. This may be called even if it is set
          * to its existing value.
          */
-        mPreferences.registerOnSharedPreferenceChangeListener(mPreferenceChangeListener);
+        mPreferences.registerListener(PREF_KEYS.VEE_STRING, mPreferenceChangeListener);
 
         /*
          * Update `String` to see if "OnSharedPreferenceChangeListener" is triggered
@@ -113,35 +105,35 @@ public class SimpleSharedPreferencesDemo extends Activity {
      * Get Boolean
      */
     public void getBoolean(View v) {
-        setText(VALUE_IN_PREF + mPreferences.getBoolean(KEYS.VEE_BOOL, false));
+        setText(VALUE_IN_PREF + mPreferences.get(PREF_KEYS.VEE_BOOL));
     }
 
     /**
      * Get Float
      */
     public void getFloat(View v) {
-        setText(VALUE_IN_PREF + mPreferences.getFloat(KEYS.VEE_FLOAT, 0f));
+        setText(VALUE_IN_PREF + mPreferences.get(PREF_KEYS.VEE_FLOAT));
     }
 
     /**
      * Get Integer
      */
     public void getInt(View v) {
-        setText(VALUE_IN_PREF + mPreferences.getInt(KEYS.VEE_INT, -1));
+        setText(VALUE_IN_PREF + mPreferences.get(PREF_KEYS.VEE_INT));
     }
 
     /**
      * Get Long
      */
     public void getLong(View v) {
-        setText(VALUE_IN_PREF + mPreferences.getLong(KEYS.VEE_LONG, -1L));
+        setText(VALUE_IN_PREF + mPreferences.get(PREF_KEYS.VEE_LONG));
     }
 
     /**
      * Get String
      */
     public void getString(View v) {
-        setText(VALUE_IN_PREF + mPreferences.getString(KEYS.VEE_STRING, ""));
+        setText(VALUE_IN_PREF + mPreferences.get(PREF_KEYS.VEE_STRING));
     }
 
     /**
@@ -212,7 +204,7 @@ public class SimpleSharedPreferencesDemo extends Activity {
     @Override
     protected void onPause() {
         super.onPause();
-        mPreferences.unregisterOnSharedPreferenceChangeListener(mPreferenceChangeListener);
+        mPreferences.unregisterListener(mPreferenceChangeListener);
     }
 
     /**
@@ -9,7 +9,7 @@ public class MyApplication extends Application {
     public void onCreate() {
         super.onCreate();
 
-        //Initialize here.
-        SimpleSharedPreferences.initialize(this);
+        //Initialize here, preferences are loaded in background.
+        SimpleSharedPreferences.initializeAsync(this);
     }
 }
@@ -1,5 +1,6 @@
 package com.venomvendor.sample.simplesharedpreferences.utils;
 
+import com.venomvendor.library.PrefKey;
 import com.venomvendor.library.SimpleSharedPreferences;
 
 /**
@@ -42,4 +43,20 @@ public class Constants {
          */
         public static final String VEE_STRING_SET = "vee_string_set";
     }
+
+    /**
+     * Typed {@linkplain KEYS}, with default values.
+     */
+    public static class PREF_KEYS {
+
+        public static final PrefKey.BooleanKey VEE_BOOL = new PrefKey.BooleanKey(KEYS.VEE_BOOL, false);
+
+        public static final PrefKey.FloatKey VEE_FLOAT = new PrefKey.FloatKey(KEYS.VEE_FLOAT, 0f);
+
+        public static final PrefKey.IntKey VEE_INT = new PrefKey.IntKey(KEYS.VEE_INT, -1);
+
+        public static final PrefKey.LongKey VEE_LONG = new PrefKey.LongKey(KEYS.VEE_LONG, -1L);
+
+        public static final PrefKey.StringKey VEE_STRING = new PrefKey.StringKey(KEYS.VEE_STRING, "");
+    }
 }